@@ -0,0 +1,239 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.util.*;
+
+/**
+ * Navigation shared by the sets over sorted keys addressed by index, such as a primitive array or a mapped file.
+ * A set is a view of the range {@code [from, to)} of the keys, read in reverse if {@code descending}. Subclasses
+ * own the keys and supply their binary search, so everything here works with search results: a key index,
+ * or {@code -insertion - 1}.
+ */
+abstract class AbstractRangeSet<E, S extends AbstractRangeSet<E, S>>
+        extends AbstractSet<E> implements NavigableSet<E> {
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    final int from;
+    final int to;
+    final boolean descending;
+
+    AbstractRangeSet(int from, int to, boolean descending) {
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    /**
+     * Binary search of {@code value} in {@code [from, to)} of the keys.
+     */
+    abstract int binarySearch(E value);
+
+    /**
+     * Boxed element at key index {@code index}.
+     */
+    abstract E element(int index);
+
+    /**
+     * Order of the keys, or {@code null} for the natural order.
+     */
+    abstract Comparator<? super E> ascendingComparator();
+
+    abstract S view(int from, int to, boolean descending);
+
+    /**
+     * Search result for all the keys turned into one for {@code [from, to)}.
+     */
+    int clip(int search) {
+        if (search >= from && search < to) {
+            return search;
+        }
+        int insertion = search >= 0 ? search : -search - 1;
+        return -Math.max(from, Math.min(to, insertion)) - 1;
+    }
+
+    // Key indices of the nearest elements in ascending order; from - 1 or to if there is none.
+
+    static int ascendingFloor(int search) {
+        return search >= 0 ? search : -search - 2;
+    }
+
+    static int ascendingCeiling(int search) {
+        return search >= 0 ? search : -search - 1;
+    }
+
+    static int ascendingLower(int search) {
+        return search >= 0 ? search - 1 : -search - 2;
+    }
+
+    static int ascendingHigher(int search) {
+        return search >= 0 ? search + 1 : -search - 1;
+    }
+
+    // Positions in the order of this set for a search result, or -1 if there is no such element.
+
+    int floorPosition(int search) {
+        return position(descending ? ascendingCeiling(search) : ascendingFloor(search));
+    }
+
+    int ceilingPosition(int search) {
+        return position(descending ? ascendingFloor(search) : ascendingCeiling(search));
+    }
+
+    int lowerPosition(int search) {
+        return position(descending ? ascendingHigher(search) : ascendingLower(search));
+    }
+
+    int higherPosition(int search) {
+        return position(descending ? ascendingLower(search) : ascendingHigher(search));
+    }
+
+    private int position(int index) {
+        if (index < from || index >= to) {
+            return -1;
+        }
+        return descending ? to - 1 - index : index - from;
+    }
+
+    /**
+     * Key index of position {@code index} in the order of this set.
+     */
+    int arrayIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+        }
+        return descending ? to - 1 - index : from + index;
+    }
+
+    private int lowBound(E value, boolean inclusive) {
+        int search = binarySearch(value);
+        return inclusive ? ascendingCeiling(search) : ascendingHigher(search);
+    }
+
+    private int highBound(E value, boolean inclusive) {
+        int search = binarySearch(value);
+        return (inclusive ? ascendingFloor(search) : ascendingLower(search)) + 1;
+    }
+
+    private E getOrNull(int index) {
+        return index < 0 ? null : element(arrayIndex(index));
+    }
+
+    @Override
+    public E lower(E value) {
+        return getOrNull(lowerPosition(binarySearch(value)));
+    }
+
+    @Override
+    public E floor(E value) {
+        return getOrNull(floorPosition(binarySearch(value)));
+    }
+
+    @Override
+    public E ceiling(E value) {
+        return getOrNull(ceilingPosition(binarySearch(value)));
+    }
+
+    @Override
+    public E higher(E value) {
+        return getOrNull(higherPosition(binarySearch(value)));
+    }
+
+    @Override
+    public E pollFirst() {
+        throw new UnsupportedOperationException("Poll first is not supported");
+    }
+
+    @Override
+    public E pollLast() {
+        throw new UnsupportedOperationException("Poll last is not supported");
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    @Override
+    public S descendingSet() {
+        return view(from, to, !descending);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private S range(int low, int high) {
+        return view(low, Math.max(low, high), descending);
+    }
+
+    @Override
+    public S subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("Left bound is greater than right one");
+        }
+        return descending ? range(lowBound(toElement, toInclusive), highBound(fromElement, fromInclusive))
+                : range(lowBound(fromElement, fromInclusive), highBound(toElement, toInclusive));
+    }
+
+    @Override
+    public S headSet(E toElement, boolean inclusive) {
+        return descending ? range(lowBound(toElement, inclusive), to) : range(from, highBound(toElement, inclusive));
+    }
+
+    @Override
+    public S tailSet(E fromElement, boolean inclusive) {
+        return descending ? range(from, highBound(fromElement, inclusive)) : range(lowBound(fromElement, inclusive), to);
+    }
+
+    @Override
+    public S subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public S headSet(E toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public S tailSet(E fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Comparator<? super E> comparator() {
+        Comparator<? super E> ascending = ascendingComparator();
+        if (!descending) {
+            return ascending;
+        }
+        return ascending == null ? Collections.reverseOrder() : Collections.reverseOrder((Comparator<E>) ascending);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        Comparator<? super E> comparator = comparator();
+        return comparator == null ? ((Comparable<? super E>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    @Override
+    public E first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("attempted to access an element which doesn't exist");
+        }
+        return element(arrayIndex(0));
+    }
+
+    @Override
+    public E last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("attempted to access an element which doesn't exist");
+        }
+        return element(arrayIndex(size() - 1));
+    }
+}
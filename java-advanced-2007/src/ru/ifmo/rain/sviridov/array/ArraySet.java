@@ -2,8 +2,14 @@ package ru.ifmo.rain.sviridov.array;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
 
 public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int GALLOP_RATIO = 8;
+    private static final int PARALLEL_BATCH = 1 << 14;
+
     private final List<T> elements;
     private final Comparator<? super T> comparator;
 
@@ -13,14 +19,12 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     }
 
     public ArraySet(Collection<? extends T> collection) {
-        elements = List.copyOf(new TreeSet<>(collection));
-        comparator = null;
+        this(collection, null);
     }
 
     public ArraySet(Collection<? extends T> collection, Comparator<? super T> comparator) {
-        TreeSet<T> temp = new TreeSet<>(comparator);
-        temp.addAll(collection);
-        elements = List.copyOf(temp);
+        Object[] array = collection.toArray();
+        elements = sortedList(array, array.length, comparator, isSortedBy(collection, comparator));
         this.comparator = comparator;
     }
 
@@ -29,6 +33,100 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
         this.comparator = comparator;
     }
 
+    public static <T> Builder<T> builder() {
+        return new Builder<>(null);
+    }
+
+    public static <T> Builder<T> builder(Comparator<? super T> comparator) {
+        return new Builder<>(comparator);
+    }
+
+    /**
+     * Collects elements into a growing array which is sorted and deduplicated in place by {@link #build()}.
+     */
+    public static class Builder<T> {
+        private final Comparator<? super T> comparator;
+        private Object[] array = new Object[16];
+        private int size;
+
+        private Builder(Comparator<? super T> comparator) {
+            this.comparator = comparator;
+        }
+
+        public Builder<T> add(T element) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+            }
+            array[size++] = Objects.requireNonNull(element);
+            return this;
+        }
+
+        public Builder<T> addAll(Collection<? extends T> collection) {
+            if (array.length - size < collection.size()) {
+                array = Arrays.copyOf(array, Math.max(size + collection.size(), size * 2));
+            }
+            for (T element : collection) {
+                add(element);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the set and resets the builder. The array of the builder becomes the storage of the set,
+         * unless deduplication left more than half of it unused.
+         */
+        public ArraySet<T> build() {
+            ArraySet<T> set = new ArraySet<>(sortedList(array, size, comparator, false), comparator);
+            array = new Object[16];
+            size = 0;
+            return set;
+        }
+    }
+
+    private static boolean isSortedBy(Collection<?> collection, Comparator<?> comparator) {
+        return collection instanceof SortedSet && Objects.equals(((SortedSet<?>) collection).comparator(), comparator);
+    }
+
+    /**
+     * Sorts the first {@code size} elements of {@code array} in place unless they are already in order,
+     * then drops repeated elements in a single pass keeping the first of each run, as {@link TreeSet} does.
+     * Only the sort of a large array runs in parallel, the order check and the deduplication are sequential.
+     * The array is used as the storage of the list, and is copied only if more than half of it is unused.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> sortedList(Object[] array, int size, Comparator<? super T> comparator, boolean sorted) {
+        Comparator<Object> order = comparator == null ? (a, b) -> ((Comparable<Object>) a).compareTo(b) : (Comparator<Object>) comparator;
+        if (!sorted) {
+            if (size == 1) {
+                // type check of a lone element, as TreeSet.add does
+                order.compare(array[0], array[0]);
+            }
+            for (int i = 1; i < size; i++) {
+                if (order.compare(array[i - 1], array[i]) > 0) {
+                    if (size >= PARALLEL_THRESHOLD) {
+                        Arrays.parallelSort(array, 0, size, order);
+                    } else {
+                        Arrays.sort(array, 0, size, order);
+                    }
+                    break;
+                }
+            }
+            int unique = Math.min(size, 1);
+            for (int i = 1; i < size; i++) {
+                if (order.compare(array[unique - 1], array[i]) != 0) {
+                    array[unique++] = array[i];
+                }
+            }
+            Arrays.fill(array, unique, size, null);
+            size = unique;
+        }
+        if (size < array.length / 2) {
+            return Arrays.asList((T[]) Arrays.copyOf(array, size));
+        }
+        List<T> list = Arrays.asList((T[]) array);
+        return size == array.length ? list : list.subList(0, size);
+    }
+
     private int positionIndex(T t) {
         return Collections.binarySearch(elements, Objects.requireNonNull(t), comparator);
     }
@@ -110,7 +208,26 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
 
 
     @Override
+    @SuppressWarnings("unchecked")
     public boolean containsAll(Collection<?> collection) {
+        if (isSameOrder(collection)) {
+            List<T> other = ((ArraySet<T>) collection).elements;
+            if (other.size() > elements.size()) {
+                return false;
+            }
+            int i = 0;
+            for (T element : other) {
+                i = other.size() * GALLOP_RATIO < elements.size() ? gallop(elements, i, element) : i;
+                while (i < elements.size() && compare(elements.get(i), element) < 0) {
+                    i++;
+                }
+                if (i == elements.size() || compare(elements.get(i), element) != 0) {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
         for (Iterator<?> i = collection.iterator(); i.hasNext(); ) {
             if (!contains(i.next())) {
                 return false;
@@ -120,7 +237,266 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     }
 
     @Override
-    public NavigableSet<T> descendingSet() {
+    public boolean equals(Object o) {
+        if (o instanceof ArraySet && isSameOrder((ArraySet<?>) o)) {
+            return size() == ((ArraySet<?>) o).size() && containsAll((ArraySet<?>) o);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Elements of this set and of {@code collection}; of two equal elements the one from this set is kept.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<T> union(Collection<? extends T> collection) {
+        if (!isSameOrder(collection)) {
+            Object[] array = Arrays.copyOf(elements.toArray(), elements.size() + collection.size());
+            Object[] other = collection.toArray();
+            System.arraycopy(other, 0, array, elements.size(), other.length);
+            return new ArraySet<>(sortedList(array, elements.size() + other.length, comparator, false), comparator);
+        }
+        List<T> other = ((ArraySet<T>) collection).elements;
+        List<T> result = new ArrayList<>(elements.size() + other.size());
+        if (Math.min(elements.size(), other.size()) * GALLOP_RATIO < Math.max(elements.size(), other.size())) {
+            boolean small = elements.size() < other.size();
+            List<T> smaller = small ? elements : other;
+            List<T> larger = small ? other : elements;
+            int i = 0;
+            for (T element : smaller) {
+                int j = gallop(larger, i, element);
+                result.addAll(larger.subList(i, j));
+                boolean equal = j < larger.size() && compare(larger.get(j), element) == 0;
+                result.add(equal && !small ? larger.get(j) : element);
+                i = equal ? j + 1 : j;
+            }
+            result.addAll(larger.subList(i, larger.size()));
+        } else {
+            int i = 0, j = 0;
+            while (i < elements.size() && j < other.size()) {
+                int c = compare(elements.get(i), other.get(j));
+                result.add(c <= 0 ? elements.get(i++) : other.get(j++));
+                if (c == 0) {
+                    j++;
+                }
+            }
+            result.addAll(elements.subList(i, elements.size()));
+            result.addAll(other.subList(j, other.size()));
+        }
+        return new ArraySet<>(result, comparator);
+    }
+
+    /**
+     * Elements of this set that are also in {@code collection}.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<T> intersection(Collection<?> collection) {
+        if (!isSameOrder(collection)) {
+            return filter(collection, true);
+        }
+        List<T> other = ((ArraySet<T>) collection).elements;
+        List<T> result = new ArrayList<>(Math.min(elements.size(), other.size()));
+        if (Math.min(elements.size(), other.size()) * GALLOP_RATIO < Math.max(elements.size(), other.size())) {
+            boolean small = elements.size() < other.size();
+            List<T> smaller = small ? elements : other;
+            List<T> larger = small ? other : elements;
+            int i = 0;
+            for (T element : smaller) {
+                i = gallop(larger, i, element);
+                if (i < larger.size() && compare(larger.get(i), element) == 0) {
+                    result.add(small ? element : larger.get(i));
+                    i++;
+                }
+            }
+        } else {
+            int i = 0, j = 0;
+            while (i < elements.size() && j < other.size()) {
+                int c = compare(elements.get(i), other.get(j));
+                if (c == 0) {
+                    result.add(elements.get(i));
+                }
+                if (c <= 0) {
+                    i++;
+                }
+                if (c >= 0) {
+                    j++;
+                }
+            }
+        }
+        return new ArraySet<>(result, comparator);
+    }
+
+    /**
+     * Elements of this set that are not in {@code collection}.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<T> difference(Collection<?> collection) {
+        if (!isSameOrder(collection)) {
+            return filter(collection, false);
+        }
+        List<T> other = ((ArraySet<T>) collection).elements;
+        List<T> result = new ArrayList<>(elements.size());
+        if (elements.size() * GALLOP_RATIO < other.size()) {
+            int j = 0;
+            for (T element : elements) {
+                j = gallop(other, j, element);
+                if (j == other.size() || compare(other.get(j), element) != 0) {
+                    result.add(element);
+                }
+            }
+        } else if (other.size() * GALLOP_RATIO < elements.size()) {
+            int i = 0;
+            for (T element : other) {
+                int j = gallop(elements, i, element);
+                result.addAll(elements.subList(i, j));
+                i = j < elements.size() && compare(elements.get(j), element) == 0 ? j + 1 : j;
+            }
+            result.addAll(elements.subList(i, elements.size()));
+        } else {
+            int i = 0, j = 0;
+            while (i < elements.size()) {
+                int c = j < other.size() ? compare(elements.get(i), other.get(j)) : -1;
+                if (c < 0) {
+                    result.add(elements.get(i));
+                }
+                if (c <= 0) {
+                    i++;
+                }
+                if (c >= 0) {
+                    j++;
+                }
+            }
+        }
+        return new ArraySet<>(result, comparator);
+    }
+
+    /**
+     * Answers a series of lookups, each continuing from the position of the previous one with a galloping
+     * search, so a series of queries ascending in the order of this set costs O(log distance) per query.
+     * A query smaller than the previous one restarts from the beginning, so any order gives correct answers.
+     */
+    public class Cursor {
+        private int position;
+
+        private int lowerBound(T t) {
+            Objects.requireNonNull(t);
+            if (position > 0 && compare(elements.get(position - 1), t) >= 0) {
+                position = 0;
+            }
+            position = gallop(elements, position, t);
+            return position;
+        }
+
+        private boolean found(int i, T t) {
+            return i < elements.size() && compare(elements.get(i), t) == 0;
+        }
+
+        public boolean contains(T t) {
+            return found(lowerBound(t), t);
+        }
+
+        public T floor(T t) {
+            int i = lowerBound(t);
+            return found(i, t) ? elements.get(i) : get(i - 1);
+        }
+
+        public T ceiling(T t) {
+            return get(lowerBound(t));
+        }
+
+        public T lower(T t) {
+            return get(lowerBound(t) - 1);
+        }
+
+        public T higher(T t) {
+            int i = lowerBound(t);
+            return get(found(i, t) ? i + 1 : i);
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public void contains(T[] queries, boolean[] results) {
+        batch(queries.length, results.length, (cursor, i) -> results[i] = cursor.contains(queries[i]));
+    }
+
+    public void floor(T[] queries, T[] results) {
+        batch(queries.length, results.length, (cursor, i) -> results[i] = cursor.floor(queries[i]));
+    }
+
+    public void ceiling(T[] queries, T[] results) {
+        batch(queries.length, results.length, (cursor, i) -> results[i] = cursor.ceiling(queries[i]));
+    }
+
+    /**
+     * Runs {@code query} for every index with one cursor per contiguous chunk of queries;
+     * large batches are split into chunks answered in parallel.
+     */
+    private void batch(int size, int capacity, ObjIntConsumer<Cursor> query) {
+        if (capacity < size) {
+            throw new IllegalArgumentException("Results array is shorter than queries");
+        }
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors() * 4, size / PARALLEL_BATCH);
+        if (chunks <= 1) {
+            Cursor cursor = new Cursor();
+            for (int i = 0; i < size; i++) {
+                query.accept(cursor, i);
+            }
+            return;
+        }
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            Cursor cursor = new Cursor();
+            for (int i = (int) ((long) size * chunk / chunks), end = (int) ((long) size * (chunk + 1) / chunks); i < end; i++) {
+                query.accept(cursor, i);
+            }
+        });
+    }
+
+    private ArraySet<T> filter(Collection<?> collection, boolean retain) {
+        List<T> result = new ArrayList<>();
+        for (T element : elements) {
+            if (collection.contains(element) == retain) {
+                result.add(element);
+            }
+        }
+        return new ArraySet<>(result, comparator);
+    }
+
+    private boolean isSameOrder(Collection<?> collection) {
+        return collection instanceof ArraySet && Objects.equals(((ArraySet<?>) collection).comparator, comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T a, T b) {
+        return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    /**
+     * Index of the first element of {@code list} starting from {@code from} that is not less than {@code key},
+     * found by doubling the step and then searching the last step in halves.
+     */
+    private int gallop(List<T> list, int from, T key) {
+        int low = from;
+        int step = 1;
+        while (from + step - 1 < list.size() && compare(list.get(from + step - 1), key) < 0) {
+            low = from + step;
+            step <<= 1;
+        }
+        int high = Math.min(list.size(), from + step - 1);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(list.get(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public ArraySet<T> descendingSet() {
         return new ArraySet<>(new ReversedList<>(elements), Collections.reverseOrder(comparator));
     }
 
@@ -150,7 +526,7 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     }
 
     @Override
-    public NavigableSet<T> headSet(T t, boolean b) {
+    public ArraySet<T> headSet(T t, boolean b) {
         if (isEmpty()) {
             return this;
         }
@@ -158,7 +534,7 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
     }
 
     @Override
-    public NavigableSet<T> tailSet(T t, boolean b) {
+    public ArraySet<T> tailSet(T t, boolean b) {
         if (isEmpty()) {
             return this;
         }
@@ -0,0 +1,60 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.util.Random;
+
+public class ArraySetBenchmark {
+    private static final int QUERIES = 1 << 20;
+    private static final int WARMUP = 3;
+    private static final int MEASURED = 5;
+
+    public static void main(String[] args) {
+        int maxLog = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+        Random random = new Random(0);
+        long[] queries = new long[QUERIES];
+        System.out.println(String.format("%10s %-10s %12s %12s", "size", "layout", "contains ns", "floor ns"));
+        for (int log = 10; log <= maxLog; log += 2) {
+            int size = 1 << log;
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = random.nextInt(2 * size);
+            }
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = 2L * i;
+            }
+            LongArraySet sorted = new LongArraySet(values);
+            LongArraySet indexed = sorted.withSearchIndex();
+            System.out.println(String.format("%10d %-10s %12.1f %12.1f", size, "sorted",
+                    measure(sorted, queries, false), measure(sorted, queries, true)));
+            System.out.println(String.format("%10d %-10s %12.1f %12.1f", size, "eytzinger",
+                    measure(indexed, queries, false), measure(indexed, queries, true)));
+        }
+    }
+
+    private static double measure(LongArraySet set, long[] queries, boolean floor) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += run(set, queries, floor);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED; i++) {
+            sink += run(set, queries, floor);
+        }
+        double nanos = (double) (System.nanoTime() - start) / MEASURED / queries.length;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return nanos;
+    }
+
+    private static long run(LongArraySet set, long[] queries, boolean floor) {
+        long sum = 0;
+        for (long query : queries) {
+            if (floor) {
+                sum += set.floorIndex(query);
+            } else if (set.contains(query)) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Search index over a sorted primitive array: every {@code STRIDE}-th key is copied into a {@code long[]} in
+ * Eytzinger order, where node {@code k} has children {@code 2k} and {@code 2k + 1}. A search walks this tree,
+ * whose upper levels share a few cache lines, and then the caller finishes with a binary search inside one
+ * block of {@code STRIDE} adjacent keys. The tree is padded to a perfect one, so the in-order rank of a node
+ * is computed from its number instead of being loaded from another array.
+ */
+class EytzingerIndex {
+    static final int STRIDE = 16;
+
+    private final long[] tree;
+    private final int samples;
+    private final int height;
+
+    /**
+     * Index over {@code length} sorted keys, the {@code i}-th of which is {@code key.applyAsLong(i)}.
+     */
+    EytzingerIndex(int length, IntToLongFunction key) {
+        samples = (length + STRIDE - 1) / STRIDE;
+        height = 32 - Integer.numberOfLeadingZeros(samples);
+        tree = new long[1 << height];
+        Arrays.fill(tree, Long.MAX_VALUE);
+        build(key, 0, 1);
+    }
+
+    private int build(IntToLongFunction key, int i, int k) {
+        if (k < tree.length) {
+            i = build(key, i, 2 * k);
+            if (i < samples) {
+                tree[k] = key.applyAsLong(i * STRIDE);
+            }
+            i = build(key, i + 1, 2 * k + 1);
+        }
+        return i;
+    }
+
+    /**
+     * Array index of the block that may contain {@code key}: the block of the last sampled key not greater
+     * than {@code key}, or {@code -1} if {@code key} is less than every key.
+     */
+    int block(long key) {
+        int k = 1;
+        while (k < tree.length) {
+            k = 2 * k + (tree[k] <= key ? 1 : 0);
+        }
+        // drop the right turns after the last left one: k becomes the first node greater than key, or 0
+        k >>= Integer.numberOfTrailingZeros(~k) + 1;
+        int block = samples - 1;
+        if (k != 0) {
+            int depth = 31 - Integer.numberOfLeadingZeros(k);
+            block = Math.min((((k - (1 << depth)) << 1 | 1) << (height - 1 - depth)) - 1, samples) - 1;
+        }
+        return block < 0 ? -1 : block * STRIDE;
+    }
+}
@@ -0,0 +1,168 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.util.*;
+
+/**
+ * Sorted set of distinct {@code int} values stored in a plain {@code int[]}. Subsets and the descending set
+ * are views over a range of the same array. Besides the boxed {@link NavigableSet} methods it offers unboxed
+ * lookups: {@link #contains(int)} and the {@code *Index} methods returning a position usable with
+ * {@link #getInt(int)}, or {@code -1}. Large sets may add a search index with {@link #withSearchIndex()}.
+ */
+public class IntArraySet extends AbstractRangeSet<Integer, IntArraySet> {
+    private final int[] array;
+    private final EytzingerIndex index;
+
+    public IntArraySet() {
+        this(new int[0], 0, 0, false, null);
+    }
+
+    public IntArraySet(int... values) {
+        this(sortedUnique(values.clone()), false);
+    }
+
+    public IntArraySet(Collection<? extends Integer> collection) {
+        this(unbox(collection), false);
+    }
+
+    private IntArraySet(int[] sorted, boolean descending) {
+        this(sorted, 0, sorted.length, descending, null);
+    }
+
+    private IntArraySet(int[] array, int from, int to, boolean descending, EytzingerIndex index) {
+        super(from, to, descending);
+        this.array = array;
+        this.index = index;
+    }
+
+    private static int[] unbox(Collection<? extends Integer> collection) {
+        int[] values = new int[collection.size()];
+        int i = 0;
+        for (Integer value : collection) {
+            values[i++] = value;
+        }
+        return sortedUnique(values);
+    }
+
+    private static int[] sortedUnique(int[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] > values[i]) {
+                if (values.length >= PARALLEL_THRESHOLD) {
+                    Arrays.parallelSort(values);
+                } else {
+                    Arrays.sort(values);
+                }
+                break;
+            }
+        }
+        int unique = Math.min(values.length, 1);
+        for (int i = 1; i < values.length; i++) {
+            if (values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique == values.length ? values : Arrays.copyOf(values, unique);
+    }
+
+    private int search(int value) {
+        if (index == null) {
+            return Arrays.binarySearch(array, from, to, value);
+        }
+        int block = index.block(value);
+        if (block < 0) {
+            return -from - 1;
+        }
+        return clip(Arrays.binarySearch(array, block, Math.min(block + EytzingerIndex.STRIDE, array.length), value));
+    }
+
+    @Override
+    int binarySearch(Integer value) {
+        return search(value);
+    }
+
+    @Override
+    Integer element(int index) {
+        return array[index];
+    }
+
+    @Override
+    Comparator<? super Integer> ascendingComparator() {
+        return null;
+    }
+
+    @Override
+    IntArraySet view(int from, int to, boolean descending) {
+        return new IntArraySet(array, from, to, descending, index);
+    }
+
+    /**
+     * The same set with an {@link EytzingerIndex} over its array, which makes lookups in sets larger than
+     * the cache faster at the cost of about one {@code long} per eight elements. Views share the index.
+     */
+    public IntArraySet withSearchIndex() {
+        if (index != null) {
+            return this;
+        }
+        return new IntArraySet(array, from, to, descending, new EytzingerIndex(array.length, i -> array[i]));
+    }
+
+    public boolean contains(int value) {
+        return search(value) >= 0;
+    }
+
+    public int floorIndex(int value) {
+        return floorPosition(search(value));
+    }
+
+    public int ceilingIndex(int value) {
+        return ceilingPosition(search(value));
+    }
+
+    public int lowerIndex(int value) {
+        return lowerPosition(search(value));
+    }
+
+    public int higherIndex(int value) {
+        return higherPosition(search(value));
+    }
+
+    public int getInt(int index) {
+        return array[arrayIndex(index)];
+    }
+
+    public int[] toIntArray() {
+        int[] result = Arrays.copyOfRange(array, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                int t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains((int) (Integer) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getInt(next++);
+            }
+        };
+    }
+}
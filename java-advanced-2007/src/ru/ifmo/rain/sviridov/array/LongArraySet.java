@@ -0,0 +1,168 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.util.*;
+
+/**
+ * Sorted set of distinct {@code long} values stored in a plain {@code long[]}. Subsets and the descending set
+ * are views over a range of the same array. Besides the boxed {@link NavigableSet} methods it offers unboxed
+ * lookups: {@link #contains(long)} and the {@code *Index} methods returning a position usable with
+ * {@link #getLong(int)}, or {@code -1}. Large sets may add a search index with {@link #withSearchIndex()}.
+ */
+public class LongArraySet extends AbstractRangeSet<Long, LongArraySet> {
+    private final long[] array;
+    private final EytzingerIndex index;
+
+    public LongArraySet() {
+        this(new long[0], 0, 0, false, null);
+    }
+
+    public LongArraySet(long... values) {
+        this(sortedUnique(values.clone()), false);
+    }
+
+    public LongArraySet(Collection<? extends Long> collection) {
+        this(unbox(collection), false);
+    }
+
+    private LongArraySet(long[] sorted, boolean descending) {
+        this(sorted, 0, sorted.length, descending, null);
+    }
+
+    private LongArraySet(long[] array, int from, int to, boolean descending, EytzingerIndex index) {
+        super(from, to, descending);
+        this.array = array;
+        this.index = index;
+    }
+
+    private static long[] unbox(Collection<? extends Long> collection) {
+        long[] values = new long[collection.size()];
+        int i = 0;
+        for (Long value : collection) {
+            values[i++] = value;
+        }
+        return sortedUnique(values);
+    }
+
+    private static long[] sortedUnique(long[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] > values[i]) {
+                if (values.length >= PARALLEL_THRESHOLD) {
+                    Arrays.parallelSort(values);
+                } else {
+                    Arrays.sort(values);
+                }
+                break;
+            }
+        }
+        int unique = Math.min(values.length, 1);
+        for (int i = 1; i < values.length; i++) {
+            if (values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique == values.length ? values : Arrays.copyOf(values, unique);
+    }
+
+    private int search(long value) {
+        if (index == null) {
+            return Arrays.binarySearch(array, from, to, value);
+        }
+        int block = index.block(value);
+        if (block < 0) {
+            return -from - 1;
+        }
+        return clip(Arrays.binarySearch(array, block, Math.min(block + EytzingerIndex.STRIDE, array.length), value));
+    }
+
+    @Override
+    int binarySearch(Long value) {
+        return search(value);
+    }
+
+    @Override
+    Long element(int index) {
+        return array[index];
+    }
+
+    @Override
+    Comparator<? super Long> ascendingComparator() {
+        return null;
+    }
+
+    @Override
+    LongArraySet view(int from, int to, boolean descending) {
+        return new LongArraySet(array, from, to, descending, index);
+    }
+
+    /**
+     * The same set with an {@link EytzingerIndex} over its array, which makes lookups in sets larger than
+     * the cache faster at the cost of about one {@code long} per eight elements. Views share the index.
+     */
+    public LongArraySet withSearchIndex() {
+        if (index != null) {
+            return this;
+        }
+        return new LongArraySet(array, from, to, descending, new EytzingerIndex(array.length, i -> array[i]));
+    }
+
+    public boolean contains(long value) {
+        return search(value) >= 0;
+    }
+
+    public int floorIndex(long value) {
+        return floorPosition(search(value));
+    }
+
+    public int ceilingIndex(long value) {
+        return ceilingPosition(search(value));
+    }
+
+    public int lowerIndex(long value) {
+        return lowerPosition(search(value));
+    }
+
+    public int higherIndex(long value) {
+        return higherPosition(search(value));
+    }
+
+    public long getLong(int index) {
+        return array[arrayIndex(index)];
+    }
+
+    public long[] toLongArray() {
+        long[] result = Arrays.copyOfRange(array, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains((long) (Long) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getLong(next++);
+            }
+        };
+    }
+}
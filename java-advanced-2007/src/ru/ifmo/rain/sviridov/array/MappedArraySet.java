@@ -0,0 +1,392 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Immutable sorted set whose keys stay in a memory-mapped file and are searched there, so opening the set
+ * only checks the header, the string offsets and the key order, and the keys are neither on the heap nor
+ * copied per process.
+ * Subsets and the descending set are views over a range of the same mapping. Strings are ordered by code
+ * point, which is the order of their UTF-8 bytes, so a lookup compares the encoded key with the mapped bytes
+ * directly. Strings with unpaired surrogates have no UTF-8 form: they are rejected by the writer, are never
+ * contained in a set and are illegal arguments of the navigation methods.
+ * <pre>
+ * header:   int MAGIC, int VERSION, int type (0 long, 1 string), int 0, long count
+ * longs:    count longs in ascending order
+ * strings:  count + 1 longs, offsets of the keys from the start of the data; data, UTF-8 keys in order
+ * </pre>
+ * Files are mapped as a single buffer and so are limited to 2 GB. A file is written next to its target
+ * and then moved over it, so sets already mapped from the old file keep reading the old contents.
+ */
+public class MappedArraySet<T> extends AbstractRangeSet<T, MappedArraySet<T>> {
+    static final int MAGIC = 0x4d534554;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    private static final int LONGS = 0;
+    private static final int STRINGS = 1;
+
+    public static final Comparator<String> CODE_POINT_ORDER = MappedArraySet::compareCodePoints;
+
+    private final Keys<T> keys;
+
+    private MappedArraySet(Keys<T> keys, int from, int to, boolean descending) {
+        super(from, to, descending);
+        this.keys = keys;
+    }
+
+    /**
+     * Access to the keys of a mapped file by index.
+     */
+    private abstract static class Keys<T> {
+        final ByteBuffer buffer;
+        final int count;
+
+        Keys(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        abstract T get(int index);
+
+        /**
+         * Key converted once per lookup into the form {@link #compareAt} works with.
+         */
+        abstract Object encode(T key);
+
+        abstract int compareAt(int index, Object encoded);
+
+        abstract int compareKeys(int left, int right);
+
+        abstract Comparator<? super T> comparator();
+    }
+
+    private static class LongKeys extends Keys<Long> {
+        LongKeys(ByteBuffer buffer, int count) {
+            super(buffer, count);
+        }
+
+        @Override
+        Long get(int index) {
+            return buffer.getLong(HEADER_SIZE + 8 * index);
+        }
+
+        @Override
+        Object encode(Long key) {
+            return key;
+        }
+
+        @Override
+        int compareAt(int index, Object encoded) {
+            return Long.compare(buffer.getLong(HEADER_SIZE + 8 * index), (Long) encoded);
+        }
+
+        @Override
+        int compareKeys(int left, int right) {
+            return Long.compare(buffer.getLong(HEADER_SIZE + 8 * left), buffer.getLong(HEADER_SIZE + 8 * right));
+        }
+
+        @Override
+        Comparator<? super Long> comparator() {
+            return null;
+        }
+    }
+
+    private static class StringKeys extends Keys<String> {
+        private final int data;
+
+        StringKeys(ByteBuffer buffer, int count) {
+            super(buffer, count);
+            this.data = HEADER_SIZE + 8 * (count + 1);
+        }
+
+        private int start(int index) {
+            return data + (int) buffer.getLong(HEADER_SIZE + 8 * index);
+        }
+
+        @Override
+        String get(int index) {
+            int start = start(index);
+            byte[] bytes = new byte[start(index + 1) - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        Object encode(String key) {
+            return utf8(key);
+        }
+
+        @Override
+        int compareAt(int index, Object encoded) {
+            byte[] key = (byte[]) encoded;
+            int start = start(index);
+            int length = start(index + 1) - start;
+            for (int i = 0; i < Math.min(length, key.length); i++) {
+                int c = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+
+        @Override
+        int compareKeys(int left, int right) {
+            int leftStart = start(left);
+            int leftLength = start(left + 1) - leftStart;
+            int rightStart = start(right);
+            int rightLength = start(right + 1) - rightStart;
+            for (int i = 0; i < Math.min(leftLength, rightLength); i++) {
+                int c = Integer.compare(buffer.get(leftStart + i) & 0xff, buffer.get(rightStart + i) & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(leftLength, rightLength);
+        }
+
+        @Override
+        Comparator<? super String> comparator() {
+            return CODE_POINT_ORDER;
+        }
+    }
+
+    public static MappedArraySet<Long> openLongs(Path file) throws IOException {
+        ByteBuffer buffer = map(file, LONGS);
+        int count = (int) buffer.getLong(16);
+        if ((long) HEADER_SIZE + 8L * count > buffer.limit()) {
+            throw new IOException("Truncated key file");
+        }
+        return open(new LongKeys(buffer, count));
+    }
+
+    public static MappedArraySet<String> openStrings(Path file) throws IOException {
+        ByteBuffer buffer = map(file, STRINGS);
+        int count = (int) buffer.getLong(16);
+        long data = HEADER_SIZE + 8L * (count + 1);
+        if (data > buffer.limit()) {
+            throw new IOException("Truncated key file");
+        }
+        long previous = 0;
+        for (int i = 0; i <= count; i++) {
+            long offset = buffer.getLong(HEADER_SIZE + 8 * i);
+            if (i == 0 ? offset != 0 : offset < previous) {
+                throw new IOException("Corrupted key file");
+            }
+            previous = offset;
+        }
+        if (data + previous > buffer.limit()) {
+            throw new IOException("Truncated key file");
+        }
+        return open(new StringKeys(buffer, count));
+    }
+
+    private static <T> MappedArraySet<T> open(Keys<T> keys) throws IOException {
+        for (int i = 1; i < keys.count; i++) {
+            if (keys.compareKeys(i - 1, i) >= 0) {
+                throw new IOException("Keys are out of order");
+            }
+        }
+        return new MappedArraySet<>(keys, 0, keys.count, false);
+    }
+
+    private static ByteBuffer map(Path file, int type) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Key file is larger than 2 GB");
+            }
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a key file");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported key file version");
+            }
+            if (buffer.getInt(8) != type) {
+                throw new IOException(type == LONGS ? "Key file doesn't contain longs" : "Key file doesn't contain strings");
+            }
+            if (buffer.getLong(16) < 0 || buffer.getLong(16) > Integer.MAX_VALUE - 1) {
+                throw new IOException("Corrupted key file");
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes {@code values} sorted and without repeats.
+     */
+    public static void writeLongs(Path file, long[] values) throws IOException {
+        long[] sorted = new LongArraySet(values).toLongArray();
+        replace(file, out -> {
+            writeHeader(out, LONGS, sorted.length);
+            for (long value : sorted) {
+                out.writeLong(value);
+            }
+        });
+    }
+
+    /**
+     * Writes {@code values} sorted by code point and without repeats.
+     *
+     * @throws IllegalArgumentException if a value has an unpaired surrogate; the file is left untouched
+     */
+    public static void writeStrings(Path file, Collection<String> values) throws IOException {
+        List<byte[]> sorted = new ArrayList<>();
+        for (String value : new ArraySet<>(values, CODE_POINT_ORDER)) {
+            sorted.add(utf8(value));
+        }
+        replace(file, out -> {
+            writeHeader(out, STRINGS, sorted.size());
+            long offset = 0;
+            out.writeLong(offset);
+            for (byte[] value : sorted) {
+                offset += value.length;
+                out.writeLong(offset);
+            }
+            for (byte[] value : sorted) {
+                out.write(value);
+            }
+        });
+    }
+
+    private interface Content {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a temporary file next to {@code file} and atomically moves it over {@code file}, so a mapping of
+     * the old file is never truncated under its readers.
+     */
+    private static void replace(Path file, Content content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                content.write(out);
+                out.flush();
+                stream.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Strict UTF-8 form of {@code value}: {@link String#getBytes} would replace an unpaired surrogate with
+     * {@code '?'} and so put the key out of order, so those are rejected first.
+     */
+    private static byte[] utf8(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                throw new IllegalArgumentException("Unpaired surrogate in key");
+            }
+        }
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeHeader(DataOutputStream out, int type, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(type);
+        out.writeInt(0);
+        out.writeLong(count);
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+
+    @Override
+    int binarySearch(T key) {
+        Object encoded = keys.encode(Objects.requireNonNull(key));
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = keys.compareAt(middle, encoded);
+            if (c < 0) {
+                low = middle + 1;
+            } else if (c > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    @Override
+    T element(int index) {
+        return keys.get(index);
+    }
+
+    /**
+     * Natural order for longs and {@link #CODE_POINT_ORDER} for strings.
+     */
+    @Override
+    Comparator<? super T> ascendingComparator() {
+        return keys.comparator();
+    }
+
+    @Override
+    MappedArraySet<T> view(int from, int to, boolean descending) {
+        return new MappedArraySet<>(keys, from, to, descending);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        try {
+            return binarySearch((T) Objects.requireNonNull(o)) >= 0;
+        } catch (ClassCastException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys.get(arrayIndex(next++));
+            }
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs every {@code ListIP} operation over a grid of list sizes, per-element costs, thread counts and
+ * execution paths, and compares them with {@code parallelStream()} on the common pool.
+ * Usage: {@code ConcurrentBenchmark [sizes] [costs] [max-threads] [millis-per-case]}, lists comma-separated.
+ * Allocation is summed over threads alive at both ends of a case, so threads started per call
+ * by the {@code threads} and {@code virtual_threads} paths are not included.
+ */
+public class ConcurrentBenchmark {
+    private static final int WARMUP = 5;
+    private static final int MIN_RUNS = 5;
+
+    interface Operation {
+        Object run(IterativeParallelism ip, int threads, List<Integer> list, int work) throws InterruptedException;
+    }
+
+    interface StreamOperation {
+        Object run(List<Integer> list, int work);
+    }
+
+    static final Map<String, Operation> OPERATIONS = new LinkedHashMap<>();
+    static final Map<String, StreamOperation> STREAMS = new LinkedHashMap<>();
+
+    static {
+        OPERATIONS.put("join", (ip, threads, list, work) -> ip.join(threads, list));
+        OPERATIONS.put("filter", (ip, threads, list, work) -> ip.filter(threads, list, even(work)));
+        OPERATIONS.put("map", (ip, threads, list, work) -> ip.map(threads, list, x -> spin(x, work)));
+        OPERATIONS.put("maximum", (ip, threads, list, work) -> ip.maximum(threads, list, costly(work)));
+        OPERATIONS.put("minimum", (ip, threads, list, work) -> ip.minimum(threads, list, costly(work)));
+        OPERATIONS.put("all", (ip, threads, list, work) -> ip.all(threads, list, x -> spin(x, work) != 0 || x >= 0));
+        OPERATIONS.put("any", (ip, threads, list, work) -> ip.any(threads, list, x -> spin(x, work) == 0 && x < 0));
+
+        STREAMS.put("join", (list, work) -> list.parallelStream().map(Object::toString).collect(Collectors.joining()));
+        STREAMS.put("filter", (list, work) -> list.parallelStream().filter(even(work)).collect(Collectors.toList()));
+        STREAMS.put("map", (list, work) -> list.parallelStream().map(x -> spin(x, work)).collect(Collectors.toList()));
+        STREAMS.put("maximum", (list, work) -> list.parallelStream().max(costly(work)).get());
+        STREAMS.put("minimum", (list, work) -> list.parallelStream().min(costly(work)).get());
+        STREAMS.put("all", (list, work) -> list.parallelStream().allMatch(x -> spin(x, work) != 0 || x >= 0));
+        STREAMS.put("any", (list, work) -> list.parallelStream().anyMatch(x -> spin(x, work) == 0 && x < 0));
+    }
+
+    private interface Case {
+        Object run() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = ints(args.length > 0 ? args[0] : "1000,100000");
+        int[] costs = ints(args.length > 1 ? args[1] : "0,100");
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long caseNanos = (args.length > 3 ? Long.parseLong(args[3]) : 200) * 1_000_000;
+        System.out.println(String.format("%-8s %8s %5s %-15s %7s %12s %10s %10s %10s %12s",
+                "op", "size", "cost", "path", "threads", "ops/s", "p50 us", "p90 us", "p99 us", "alloc B/op"));
+        for (int size : sizes) {
+            List<Integer> list = IntStream.range(0, size).boxed().collect(Collectors.toList());
+            for (int work : costs) {
+                for (String name : OPERATIONS.keySet()) {
+                    StreamOperation stream = STREAMS.get(name);
+                    report(name, size, work, "stream", "fjp", measure(() -> stream.run(list, work), caseNanos));
+                    Operation operation = OPERATIONS.get(name);
+                    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                        final int t = threads;
+                        for (IterativeParallelism.Backend backend : List.of(IterativeParallelism.Backend.THREADS,
+                                IterativeParallelism.Backend.VIRTUAL_THREADS, IterativeParallelism.Backend.POOL)) {
+                            IterativeParallelism ip = new IterativeParallelism(backend);
+                            report(name, size, work, backend.name().toLowerCase(), Integer.toString(threads),
+                                    measure(() -> operation.run(ip, t, list, work), caseNanos));
+                        }
+                        try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads)) {
+                            IterativeParallelism ip = new IterativeParallelism(mapper);
+                            report(name, size, work, "mapper", Integer.toString(threads),
+                                    measure(() -> operation.run(ip, t, list, work), caseNanos));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static long[] measure(Case run, long caseNanos) throws InterruptedException {
+        for (int i = 0; i < WARMUP; i++) {
+            run.run();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Map<Long, Long> allocatedBefore = allocated(threads);
+        long[] latencies = new long[16];
+        int runs = 0;
+        long start = System.nanoTime();
+        long now = start;
+        while (runs < MIN_RUNS || now - start < caseNanos) {
+            run.run();
+            long end = System.nanoTime();
+            if (runs == latencies.length) {
+                latencies = Arrays.copyOf(latencies, runs * 2);
+            }
+            latencies[runs++] = end - now;
+            now = end;
+        }
+        long allocated = 0;
+        for (Map.Entry<Long, Long> entry : allocated(threads).entrySet()) {
+            allocated += entry.getValue() - allocatedBefore.getOrDefault(entry.getKey(), 0L);
+        }
+        long[] sorted = Arrays.copyOf(latencies, runs);
+        Arrays.sort(sorted);
+        return new long[]{
+                runs * 1_000_000_000L / Math.max(1, now - start),
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                allocated / runs
+        };
+    }
+
+    private static Map<Long, Long> allocated(com.sun.management.ThreadMXBean threads) {
+        Map<Long, Long> allocated = new HashMap<>();
+        if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0) {
+                    allocated.put(ids[i], bytes[i]);
+                }
+            }
+        }
+        return allocated;
+    }
+
+    static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static void report(String name, int size, int work, String path, String threads, long[] result) {
+        System.out.println(String.format("%-8s %8d %5d %-15s %7s %12d %10.1f %10.1f %10.1f %12d",
+                name, size, work, path, threads, result[0],
+                result[1] / 1e3, result[2] / 1e3, result[3] / 1e3, result[4]));
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static Predicate<Integer> even(int work) {
+        return x -> (spin(x, work) & 1) == 0;
+    }
+
+    private static Comparator<Integer> costly(int work) {
+        return Comparator.comparingInt(x -> spin(x, work));
+    }
+
+    private static int spin(int x, int work) {
+        for (int i = 0; i < work; i++) {
+            x = x * 31 + i;
+        }
+        return x;
+    }
+}
@@ -2,55 +2,334 @@ package ru.ifmo.rain.sviridov.concurrent;
 
 import info.kgeorgiy.java.advanced.concurrent.ListIP;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
-import ru.ifmo.rain.sviridov.concurrent.ParallelMapperImpl;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class IterativeParallelism implements ListIP {
+    private static final int INLINE_THRESHOLD = 64;
+    private static final int CANCEL_CHECK = 64;
+    private static final int BATCH = 1024;
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+    public enum Backend {
+        /** A new platform thread per piece, the original behaviour. */
+        THREADS,
+        /** A new virtual thread per piece, or a platform thread on runtimes without virtual threads. */
+        VIRTUAL_THREADS,
+        /** Pieces are submitted to the common {@link ForkJoinPool}. */
+        POOL,
+        /** Pieces are handed to a {@link ParallelMapper}. */
+        MAPPER
+    }
+
     private final ParallelMapper parallelMapper;
+    private final Backend backend;
 
     public IterativeParallelism() {
-        parallelMapper = null;
+        this(Backend.THREADS);
     }
 
     public IterativeParallelism(ParallelMapper parallelMapper) {
         this.parallelMapper = parallelMapper;
+        this.backend = parallelMapper == null ? Backend.THREADS : Backend.MAPPER;
+    }
+
+    public IterativeParallelism(Backend backend) {
+        if (backend == Backend.MAPPER) {
+            throw new IllegalArgumentException("Mapper backend needs a ParallelMapper");
+        }
+        this.parallelMapper = null;
+        this.backend = backend;
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private <T, R, E> E parallelRun(int nofthreads, Iterable<? extends T> source, Function<Stream<? extends T>, R> run, Function<Stream<? extends R>, E> reduce) throws InterruptedException {
+        if (source instanceof List && source instanceof RandomAccess) {
+            List<? extends T> list = (List<? extends T>) source;
+            if (nofthreads <= 1 || list.size() < INLINE_THRESHOLD) {
+                return reduce.apply(Stream.of(run.apply(list.stream())));
+            }
+            List<Stream<? extends T>> pieces = new ArrayList<>();
+            for (int[] bounds : split(nofthreads, list.size())) {
+                pieces.add(list.subList(bounds[0], bounds[1]).stream());
+            }
+            return reduce.apply(execute(pieces, run).stream());
+        }
+        Spliterator<? extends T> spliterator = source.spliterator();
+        if (nofthreads <= 1 || spliterator.estimateSize() < INLINE_THRESHOLD) {
+            return reduce.apply(Stream.of(run.apply(StreamSupport.stream(spliterator, false))));
+        }
+        return reduce.apply(runSplit(nofthreads, spliterator, run).stream());
+    }
+
+    /**
+     * Splits {@code spliterator} into at most {@code nofthreads} pieces in encounter order, always splitting
+     * the largest piece. Tree, hash and array-backed spliterators halve their source in constant time.
+     * Iterator-backed ones, as of a {@link LinkedList} or a lazy {@link Iterable}, only peel off a small
+     * batch; such a source is handed to {@link #runBatches} instead.
+     */
+    private <T, R> List<R> runSplit(int nofthreads, Spliterator<T> spliterator, Function<? super Stream<T>, R> run) throws InterruptedException {
+        Spliterator<T> prefix = spliterator.trySplit();
+        if (prefix == null) {
+            return List.of(run.apply(StreamSupport.stream(spliterator, false)));
+        }
+        if (prefix.estimateSize() < spliterator.estimateSize() / 4) {
+            return runBatches(nofthreads, new ArrayDeque<>(List.of(prefix, spliterator)), run);
+        }
+        List<Spliterator<T>> pieces = new ArrayList<>(List.of(prefix, spliterator));
+        while (pieces.size() < nofthreads) {
+            int largest = 0;
+            for (int j = 1; j < pieces.size(); j++) {
+                if (pieces.get(j).estimateSize() > pieces.get(largest).estimateSize()) {
+                    largest = j;
+                }
+            }
+            Spliterator<T> piece = pieces.get(largest).trySplit();
+            if (piece == null) {
+                break;
+            }
+            pieces.add(largest, piece);
+        }
+        pieces.removeIf(piece -> piece.getExactSizeIfKnown() == 0);
+        List<Stream<T>> streams = new ArrayList<>();
+        for (Spliterator<T> piece : pieces) {
+            streams.add(StreamSupport.stream(piece, false));
+        }
+        return execute(streams, run);
     }
 
-    private <T, R, E> E parallelRun(int nofthreads, List<? extends T> list, Function<Stream<? extends T>, R> run, Function<Stream<? extends R>, E> reduce) throws InterruptedException {
-        List<Stream<? extends T>> pieces = new ArrayList<>();
-        int blockSize = list.size() / nofthreads;
-        int remainder = list.size() % nofthreads;
+    /**
+     * Runs {@code run} over consecutive batches of at most {@link #BATCH} elements, which {@code nofthreads}
+     * workers take from {@code sources} on demand. The source is walked once, as the workers need it,
+     * and never held in memory as a whole. Results are returned in encounter order.
+     */
+    @SuppressWarnings("unchecked")
+    private <T, R> List<R> runBatches(int nofthreads, Deque<Spliterator<T>> sources, Function<? super Stream<T>, R> run) throws InterruptedException {
+        long[] taken = new long[1];
+        List<List<Map.Entry<Long, R>>> results = execute(Collections.nCopies(nofthreads, sources), queue -> {
+            List<Map.Entry<Long, R>> batches = new ArrayList<>();
+            Object[] batch = new Object[BATCH];
+            int[] size = new int[1];
+            while (true) {
+                long index;
+                size[0] = 0;
+                synchronized (queue) {
+                    index = taken[0]++;
+                    while (size[0] < BATCH && !queue.isEmpty()) {
+                        if (!queue.peekFirst().tryAdvance(element -> batch[size[0]++] = element)) {
+                            queue.pollFirst();
+                        }
+                    }
+                }
+                if (size[0] == 0) {
+                    return batches;
+                }
+                batches.add(new AbstractMap.SimpleEntry<>(index, run.apply((Stream<T>) Arrays.stream(batch, 0, size[0]))));
+            }
+        });
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(Map.Entry.comparingByKey())
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+    }
+
+    static List<int[]> split(int nofthreads, int size) {
+        List<int[]> pieces = new ArrayList<>();
+        int blockSize = size / nofthreads;
+        int remainder = size % nofthreads;
         int curPos = 0;
         for (int i = 0; i < nofthreads; i++) {
             int cbs = blockSize + (i < remainder ? 1 : 0);
             if (cbs > 0) {
-                pieces.add(list.subList(curPos, curPos + cbs).stream());
+                pieces.add(new int[]{curPos, curPos + cbs});
             }
             curPos += cbs;
         }
-        List<R> results = null;
-        if (parallelMapper == null) {
-            results = new ArrayList<>(Collections.nCopies(pieces.size(), null));
-            List<Thread> threads = new ArrayList<>();
-            for (int i = 0; i < pieces.size(); i++) {
-                final int numOfThread = i;
-                List<R> finalResults = results;
-                Thread thread = new Thread(() -> finalResults.set(numOfThread, run.apply(pieces.get(numOfThread))));
-                threads.add(thread);
-                thread.start();
-            }
-            joinAlL(threads);
+        return pieces;
+    }
+
+    /**
+     * Returns index of an element matching {@code predicate}, or {@code -1}.
+     * With {@code first} set the smallest such index is returned, otherwise any of them.
+     * Pieces share the best index found so far and poll it every {@link #CANCEL_CHECK} elements,
+     * so the search stops soon after the answer can no longer change.
+     */
+    private <T> int search(int nofthreads, List<? extends T> list, Predicate<? super T> predicate, boolean first) throws InterruptedException {
+        AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+        Function<int[], Void> run = bounds -> {
+            try {
+                searchPiece(list, bounds[0], bounds[1], predicate, first, found);
+            } catch (RuntimeException e) {
+                found.set(-1);
+                throw e;
+            }
+            return null;
+        };
+        if (nofthreads <= 1 || list.size() < INLINE_THRESHOLD) {
+            run.apply(new int[]{0, list.size()});
         } else {
-            results = parallelMapper.map(run, pieces);
+            execute(split(nofthreads, list.size()), run);
+        }
+        return found.get() == Integer.MAX_VALUE ? -1 : found.get();
+    }
+
+    private static <T> void searchPiece(List<? extends T> list, int from, int to, Predicate<? super T> predicate, boolean first, AtomicInteger found) {
+        int index = from;
+        for (T element : list.subList(from, to)) {
+            if (((index - from) & (CANCEL_CHECK - 1)) == 0 && (first ? found.get() < index : found.get() != Integer.MAX_VALUE)) {
+                return;
+            }
+            if (predicate.test(element)) {
+                if (first) {
+                    found.accumulateAndGet(index, Math::min);
+                } else {
+                    found.compareAndSet(Integer.MAX_VALUE, index);
+                }
+                return;
+            }
+            index++;
+        }
+    }
+
+    private <T, R> List<R> runPieces(int nofthreads, List<? extends T> list, Function<List<? extends T>, R> run) throws InterruptedException {
+        if (nofthreads <= 1 || list.size() < INLINE_THRESHOLD) {
+            return List.of(run.apply(list));
+        }
+        List<List<? extends T>> pieces = new ArrayList<>();
+        for (int[] bounds : split(nofthreads, list.size())) {
+            pieces.add(list.subList(bounds[0], bounds[1]));
+        }
+        return execute(pieces, run);
+    }
+
+    /**
+     * Combines neighbouring results pairwise, one level of the tree per round, keeping their order.
+     */
+    private <R> R treeReduce(List<R> results, BinaryOperator<R> operator) throws InterruptedException {
+        while (results.size() > 1) {
+            List<List<R>> pairs = new ArrayList<>();
+            for (int j = 0; j < results.size(); j += 2) {
+                pairs.add(results.subList(j, Math.min(j + 2, results.size())));
+            }
+            results = pairs.size() == 1 ? List.of(operator.apply(results.get(0), results.get(1)))
+                    : execute(pairs, pair -> pair.size() == 1 ? pair.get(0) : operator.apply(pair.get(0), pair.get(1)));
+        }
+        return results.get(0);
+    }
+
+    private static <T> List<T> merge(List<T> left, List<T> right, Comparator<? super T> comparator) {
+        List<T> result = new ArrayList<>(left.size() + right.size());
+        int l = 0, r = 0;
+        while (l < left.size() && r < right.size()) {
+            result.add(comparator.compare(right.get(r), left.get(l)) < 0 ? right.get(r++) : left.get(l++));
+        }
+        result.addAll(left.subList(l, left.size()));
+        result.addAll(right.subList(r, right.size()));
+        return result;
+    }
+
+    private static <K> Map<K, Long> mergeCounts(Map<K, Long> left, Map<K, Long> right) {
+        Map<K, Long> smaller = left.size() < right.size() ? left : right;
+        Map<K, Long> larger = smaller == left ? right : left;
+        smaller.forEach((key, count) -> larger.merge(key, count, Long::sum));
+        return larger;
+    }
+
+    <P, R> List<R> execute(List<P> pieces, Function<? super P, R> run) throws InterruptedException {
+        switch (backend) {
+            case MAPPER:
+                return parallelMapper.map(run, pieces);
+            case POOL:
+                return executeInPool(pieces, run);
+            default:
+                return executeInThreads(pieces, run, backend == Backend.VIRTUAL_THREADS && VIRTUAL_THREADS != null ? VIRTUAL_THREADS : Thread::new);
+        }
+    }
+
+    private <P, R> List<R> executeInThreads(List<P> pieces, Function<? super P, R> run, ThreadFactory factory) throws InterruptedException {
+        List<R> results = new ArrayList<>(Collections.nCopies(pieces.size(), null));
+        Queue<RuntimeException> exceptions = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i < pieces.size(); i++) {
+            final int numOfThread = i;
+            Thread thread = factory.newThread(() -> {
+                try {
+                    results.set(numOfThread, run.apply(pieces.get(numOfThread)));
+                } catch (RuntimeException e) {
+                    exceptions.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        try {
+            results.set(0, run.apply(pieces.get(0)));
+        } catch (RuntimeException e) {
+            exceptions.add(e);
+        }
+        joinAlL(threads);
+        rethrow(exceptions);
+        return results;
+    }
+
+    private <P, R> List<R> executeInPool(List<P> pieces, Function<? super P, R> run) throws InterruptedException {
+        List<R> results = new ArrayList<>(Collections.nCopies(pieces.size(), null));
+        Queue<RuntimeException> exceptions = new ConcurrentLinkedQueue<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 1; i < pieces.size(); i++) {
+            final int numOfPiece = i;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    results.set(numOfPiece, run.apply(pieces.get(numOfPiece)));
+                } catch (RuntimeException e) {
+                    exceptions.add(e);
+                }
+            }));
+        }
+        try {
+            results.set(0, run.apply(pieces.get(0)));
+        } catch (RuntimeException e) {
+            exceptions.add(e);
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                exceptions.add(new RuntimeException(e.getCause()));
+            }
+        }
+        rethrow(exceptions);
+        return results;
+    }
+
+    private static void rethrow(Queue<RuntimeException> exceptions) {
+        if (!exceptions.isEmpty()) {
+            RuntimeException exception = exceptions.poll();
+            exceptions.forEach(exception::addSuppressed);
+            throw exception;
         }
-        return reduce.apply(results.stream());
     }
 
     public static void joinAlL(List<Thread> threads) {
@@ -74,47 +353,175 @@ public class IterativeParallelism implements ListIP {
 
     @Override
     public String join(int i, List<?> list) throws InterruptedException {
-        return parallelRun(i, list, stream -> stream.map(Object::toString).collect(Collectors.joining()), stream -> stream.collect(Collectors.joining()));
+        return join(i, (Iterable<?>) list);
+    }
+
+    public String join(int i, Iterable<?> source) throws InterruptedException {
+        return parallelRun(i, source, stream -> stream.map(Object::toString).collect(Collectors.joining()), stream -> stream.collect(Collectors.joining()));
     }
 
     @Override
     public <T> List<T> filter(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
-        return parallelRun(i, list, stream -> stream.filter(predicate).collect(Collectors.toList()), stream -> stream.
+        return filter(i, (Iterable<? extends T>) list, predicate);
+    }
+
+    public <T> List<T> filter(int i, Iterable<? extends T> source, Predicate<? super T> predicate) throws InterruptedException {
+        return parallelRun(i, source, stream -> stream.filter(predicate).collect(Collectors.toList()), stream -> stream.
                 flatMap(s -> s.stream())
                 .collect(Collectors.toList()));
     }
 
     @Override
     public <T, U> List<U> map(int i, List<? extends T> list, Function<? super T, ? extends U> function) throws InterruptedException {
-        return parallelRun(i, list, stream -> stream.map(function).collect(Collectors.toList()), stream -> stream.flatMap(s -> s.stream())
+        return map(i, (Iterable<? extends T>) list, function);
+    }
+
+    public <T, U> List<U> map(int i, Iterable<? extends T> source, Function<? super T, ? extends U> function) throws InterruptedException {
+        return parallelRun(i, source, stream -> stream.map(function).collect(Collectors.toList()), stream -> stream.flatMap(s -> s.stream())
                 .collect(Collectors.toList()));
     }
 
     @Override
     public <T> T maximum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
-        return parallelRun(i, list, (lis) -> {
-            return lis.max(comparator).get();
+        return maximum(i, (Iterable<? extends T>) list, comparator);
+    }
+
+    public <T> T maximum(int i, Iterable<? extends T> source, Comparator<? super T> comparator) throws InterruptedException {
+        return parallelRun(i, source, (lis) -> {
+            return lis.max(comparator);
         }, (lis) -> {
-            return lis.max(comparator).get();
+            return lis.<T>flatMap(Optional::stream).max(comparator).get();
         });
     }
 
     @Override
     public <T> T minimum(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
-        return parallelRun(i, list, (lis) -> {
-            return lis.min(comparator).get();
+        return minimum(i, (Iterable<? extends T>) list, comparator);
+    }
+
+    public <T> T minimum(int i, Iterable<? extends T> source, Comparator<? super T> comparator) throws InterruptedException {
+        return parallelRun(i, source, (lis) -> {
+            return lis.min(comparator);
         }, (lis) -> {
-            return lis.min(comparator).get();
+            return lis.<T>flatMap(Optional::stream).min(comparator).get();
         });
     }
 
     @Override
     public <T> boolean all(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
-        return parallelRun(i, list, (stream -> stream.allMatch(predicate)), (stream -> stream.allMatch(val -> val == true)));
+        return !any(i, list, predicate.negate());
+    }
+
+    public <T> boolean all(int i, Iterable<? extends T> source, Predicate<? super T> predicate) throws InterruptedException {
+        return !any(i, source, predicate.negate());
     }
 
     @Override
     public <T> boolean any(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
-        return parallelRun(i, list, stream -> stream.anyMatch(predicate), (stream -> stream.anyMatch(val -> val == true)));
+        if (!(list instanceof RandomAccess)) {
+            return any(i, (Iterable<? extends T>) list, predicate);
+        }
+        return search(i, list, predicate, false) >= 0;
+    }
+
+    /**
+     * Pieces share a flag and stop at the next element once any of them has found a match.
+     */
+    public <T> boolean any(int i, Iterable<? extends T> source, Predicate<? super T> predicate) throws InterruptedException {
+        AtomicBoolean found = new AtomicBoolean();
+        parallelRun(i, source, stream -> stream.anyMatch(element -> {
+            if (found.get()) {
+                return true;
+            }
+            try {
+                if (predicate.test(element)) {
+                    found.set(true);
+                }
+            } catch (RuntimeException e) {
+                found.set(true);
+                throw e;
+            }
+            return found.get();
+        }), stream -> stream.count());
+        return found.get();
+    }
+
+    public <T> Optional<T> findAny(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        int index = search(i, list, predicate, false);
+        return index < 0 ? Optional.empty() : Optional.of(list.get(index));
+    }
+
+    public <T> Optional<T> findFirst(int i, List<? extends T> list, Predicate<? super T> predicate) throws InterruptedException {
+        int index = search(i, list, predicate, true);
+        return index < 0 ? Optional.empty() : Optional.of(list.get(index));
+    }
+
+    public <T, R> R mapReduce(int i, List<? extends T> list, Function<? super T, ? extends R> lift, Monoid<R> monoid) throws InterruptedException {
+        return treeReduce(runPieces(i, list, piece -> {
+            R result = monoid.identity();
+            for (T element : piece) {
+                result = monoid.apply(result, lift.apply(element));
+            }
+            return result;
+        }), monoid.operator());
+    }
+
+    /**
+     * Inclusive prefix scan: element {@code k} of the result combines elements {@code 0..k} of {@code list}.
+     */
+    public <T> List<T> scan(int i, List<? extends T> list, Monoid<T> monoid) throws InterruptedException {
+        if (i <= 1 || list.size() < INLINE_THRESHOLD) {
+            return scanPiece(list, monoid.identity(), monoid);
+        }
+        List<int[]> bounds = split(i, list.size());
+        List<T> totals = execute(bounds, piece -> {
+            T total = monoid.identity();
+            for (T element : list.subList(piece[0], piece[1])) {
+                total = monoid.apply(total, element);
+            }
+            return total;
+        });
+        List<Map.Entry<int[], T>> pieces = new ArrayList<>();
+        T offset = monoid.identity();
+        for (int j = 0; j < bounds.size(); j++) {
+            pieces.add(new AbstractMap.SimpleEntry<>(bounds.get(j), offset));
+            offset = monoid.apply(offset, totals.get(j));
+        }
+        List<T> result = new ArrayList<>(list.size());
+        for (List<T> part : execute(pieces, piece -> scanPiece(list.subList(piece.getKey()[0], piece.getKey()[1]), piece.getValue(), monoid))) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    private static <T> List<T> scanPiece(List<? extends T> piece, T offset, Monoid<T> monoid) {
+        List<T> result = new ArrayList<>(piece.size());
+        T current = offset;
+        for (T element : piece) {
+            current = monoid.apply(current, element);
+            result.add(current);
+        }
+        return result;
+    }
+
+    /**
+     * Stable merge sort: pieces are sorted independently and then merged pairwise.
+     */
+    public <T> List<T> sort(int i, List<? extends T> list, Comparator<? super T> comparator) throws InterruptedException {
+        return treeReduce(runPieces(i, list, piece -> {
+            List<T> sorted = new ArrayList<>(piece);
+            sorted.sort(comparator);
+            return sorted;
+        }), (left, right) -> merge(left, right, comparator));
+    }
+
+    public <T, K> Map<K, Long> groupByCount(int i, List<? extends T> list, Function<? super T, ? extends K> classifier) throws InterruptedException {
+        return treeReduce(runPieces(i, list, piece -> {
+            Map<K, Long> counts = new HashMap<>();
+            for (T element : piece) {
+                counts.merge(classifier.apply(element), 1L, Long::sum);
+            }
+            return counts;
+        }), IterativeParallelism::mergeCounts);
     }
 }
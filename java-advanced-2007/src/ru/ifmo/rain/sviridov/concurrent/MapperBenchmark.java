@@ -0,0 +1,40 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class MapperBenchmark {
+    private static final int ELEMENTS = 200_000;
+    private static final int WARMUP = 5;
+    private static final int MEASURED = 10;
+
+    public static void main(String[] args) throws InterruptedException {
+        int work = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Integer> list = IntStream.range(0, ELEMENTS).boxed().collect(Collectors.toList());
+        Function<Integer, Integer> function = x -> spin(x, work);
+        System.out.println(String.format("%8s %14s", "threads", "elements/s"));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads)) {
+                for (int i = 0; i < WARMUP; i++) {
+                    mapper.map(function, list);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < MEASURED; i++) {
+                    mapper.map(function, list);
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("%8d %14.0f", threads, (double) ELEMENTS * MEASURED / seconds));
+            }
+        }
+    }
+
+    private static int spin(int x, int work) {
+        for (int i = 0; i < work; i++) {
+            x = x * 31 + i;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,278 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters of a {@link ParallelMapperImpl}. Workers update striped {@link LongAdder}s once per task,
+ * never per element, and task latencies go to a histogram with power-of-two buckets.
+ */
+public class MapperMetrics implements MapperMetricsMXBean {
+    private static final String OBJECT_NAME = "ru.ifmo.rain.sviridov.concurrent:type=ParallelMapper,id=";
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final int BUCKETS = Long.SIZE;
+
+    private final int workers;
+    private final IntSupplier queuedTasks;
+    private final IntSupplier idleWorkers;
+    private final long created = System.nanoTime();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder finishedCalls = new LongAdder();
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+    private ObjectName objectName;
+
+    MapperMetrics(int workers, IntSupplier queuedTasks, IntSupplier idleWorkers) {
+        this.workers = workers;
+        this.queuedTasks = queuedTasks;
+        this.idleWorkers = idleWorkers;
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies[i] = new LongAdder();
+        }
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME + IDS.incrementAndGet());
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            System.err.println("Can't register mapper metrics: " + e.getMessage());
+        }
+    }
+
+    void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Can't unregister mapper metrics: " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    void callStarted() {
+        calls.increment();
+    }
+
+    void callFinished() {
+        finishedCalls.increment();
+    }
+
+    void task(int count, long nanos) {
+        tasks.increment();
+        elements.add(count);
+        busyNanos.add(nanos);
+        latencies[BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos))].increment();
+    }
+
+    void exception() {
+        exceptions.increment();
+    }
+
+    void parked() {
+        parks.increment();
+    }
+
+    public Snapshot snapshot() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies[i].sum();
+        }
+        long finished = finishedCalls.sum();
+        return new Snapshot(workers, calls.sum(), finished, tasks.sum(), elements.sum(), exceptions.sum(), parks.sum(),
+                queuedTasks.getAsInt(), idleWorkers.getAsInt(), busyNanos.sum(), System.nanoTime() - created, histogram);
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getPendingCalls() {
+        return snapshot().pendingCalls();
+    }
+
+    @Override
+    public long getTasks() {
+        return tasks.sum();
+    }
+
+    @Override
+    public long getElements() {
+        return elements.sum();
+    }
+
+    @Override
+    public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    @Override
+    public long getParks() {
+        return parks.sum();
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks.getAsInt();
+    }
+
+    @Override
+    public int getIdleWorkers() {
+        return idleWorkers.getAsInt();
+    }
+
+    @Override
+    public double getUtilization() {
+        return snapshot().utilization();
+    }
+
+    @Override
+    public long getTaskLatencyP50Nanos() {
+        return snapshot().taskLatencyPercentile(0.5);
+    }
+
+    @Override
+    public long getTaskLatencyP99Nanos() {
+        return snapshot().taskLatencyPercentile(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getTaskLatencyHistogram() {
+        return snapshot().taskLatencyHistogram();
+    }
+
+    /**
+     * Values of all counters read at one moment. Counters are read one by one,
+     * so values may be off by tasks finishing meanwhile.
+     */
+    public static class Snapshot {
+        private final int workers;
+        private final long calls;
+        private final long finishedCalls;
+        private final long tasks;
+        private final long elements;
+        private final long exceptions;
+        private final long parks;
+        private final int queuedTasks;
+        private final int idleWorkers;
+        private final long busyNanos;
+        private final long uptimeNanos;
+        private final long[] latencies;
+
+        private Snapshot(int workers, long calls, long finishedCalls, long tasks, long elements, long exceptions, long parks,
+                         int queuedTasks, int idleWorkers, long busyNanos, long uptimeNanos, long[] latencies) {
+            this.workers = workers;
+            this.calls = calls;
+            this.finishedCalls = finishedCalls;
+            this.tasks = tasks;
+            this.elements = elements;
+            this.exceptions = exceptions;
+            this.parks = parks;
+            this.queuedTasks = queuedTasks;
+            this.idleWorkers = idleWorkers;
+            this.busyNanos = busyNanos;
+            this.uptimeNanos = uptimeNanos;
+            this.latencies = latencies;
+        }
+
+        public long calls() {
+            return calls;
+        }
+
+        public long pendingCalls() {
+            return Math.max(0, calls - finishedCalls);
+        }
+
+        public long tasks() {
+            return tasks;
+        }
+
+        public long elements() {
+            return elements;
+        }
+
+        public long exceptions() {
+            return exceptions;
+        }
+
+        public long parks() {
+            return parks;
+        }
+
+        public int queuedTasks() {
+            return queuedTasks;
+        }
+
+        public int idleWorkers() {
+            return idleWorkers;
+        }
+
+        /**
+         * Share of worker time spent running tasks since the mapper was created.
+         */
+        public double utilization() {
+            return uptimeNanos == 0 ? 0 : Math.min(1, (double) busyNanos / uptimeNanos / workers);
+        }
+
+        /**
+         * Upper bound of the histogram bucket containing the given fraction of task latencies.
+         */
+        public long taskLatencyPercentile(double fraction) {
+            long total = 0;
+            for (long count : latencies) {
+                total += count;
+            }
+            long seen = 0;
+            for (int i = 0; i < latencies.length; i++) {
+                seen += latencies[i];
+                if (seen > 0 && seen >= fraction * total) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        public Map<String, Long> taskLatencyHistogram() {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < latencies.length; i++) {
+                if (latencies[i] > 0) {
+                    histogram.put("<" + upperBound(i) + "ns", latencies[i]);
+                }
+            }
+            return histogram;
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : 1L << (bucket + 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("calls: %d (%d pending), tasks: %d, elements: %d, exceptions: %d, queued: %d, idle: %d/%d, "
+                            + "utilization: %.1f%%, task p50: %d ns, p99: %d ns",
+                    calls, pendingCalls(), tasks, elements, exceptions, queuedTasks, idleWorkers, workers,
+                    utilization() * 100, taskLatencyPercentile(0.5), taskLatencyPercentile(0.99));
+        }
+    }
+}
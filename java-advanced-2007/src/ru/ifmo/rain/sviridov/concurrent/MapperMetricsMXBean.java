@@ -0,0 +1,31 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import java.util.Map;
+
+public interface MapperMetricsMXBean {
+    int getWorkers();
+
+    long getCalls();
+
+    long getPendingCalls();
+
+    long getTasks();
+
+    long getElements();
+
+    long getExceptions();
+
+    long getParks();
+
+    int getQueuedTasks();
+
+    int getIdleWorkers();
+
+    double getUtilization();
+
+    long getTaskLatencyP50Nanos();
+
+    long getTaskLatencyP99Nanos();
+
+    Map<String, Long> getTaskLatencyHistogram();
+}
@@ -0,0 +1,30 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+
+/**
+ * Associative operator with its identity element. Parallel operations rely on associativity only,
+ * so the operator need not be commutative.
+ */
+public class Monoid<T> {
+    private final T identity;
+    private final BinaryOperator<T> operator;
+
+    public Monoid(T identity, BinaryOperator<T> operator) {
+        this.identity = identity;
+        this.operator = Objects.requireNonNull(operator);
+    }
+
+    public T identity() {
+        return identity;
+    }
+
+    public BinaryOperator<T> operator() {
+        return operator;
+    }
+
+    public T apply(T left, T right) {
+        return operator.apply(left, right);
+    }
+}
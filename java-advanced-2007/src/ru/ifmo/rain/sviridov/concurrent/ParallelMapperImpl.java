@@ -2,102 +2,530 @@ package ru.ifmo.rain.sviridov.concurrent;
 
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
-import javax.management.RuntimeMBeanException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 
 public class ParallelMapperImpl implements ParallelMapper {
-    private List<Thread> threads;
-    private final Queue<Runnable> tasks;
-    private List results;
-    private Integer sets;
-    private final int MAX_TASKS = 10000000;
-
-    private void synchronizedRunTask() throws InterruptedException {
-        Runnable task;
-        synchronized (tasks) {
-            while (tasks.isEmpty()) {
-                tasks.wait();
-            }
-            task = tasks.poll();
-            tasks.notifyAll();
-        }
-        task.run();
+    private static final long SLICE_NANOS = 50_000;
+    private static final int MAX_SLICE = 1 << 16;
+    private static final Object NONE = new Object();
+    private static final Object NULL = new Object();
+
+    private final List<Worker> workers;
+    private final Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicInteger searchers = new AtomicInteger();
+    private final MapperMetrics metrics;
+
+    private class Worker extends Thread {
+        private final Deque<Runnable> tasks = new ConcurrentLinkedDeque<>();
+        private final AtomicBoolean parked = new AtomicBoolean();
+        private final int index;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            boolean searching = false;
+            try {
+                while (!Thread.interrupted()) {
+                    Runnable task = tasks.pollFirst();
+                    if (task == null) {
+                        if (!searching) {
+                            searching = true;
+                            searchers.incrementAndGet();
+                        }
+                        task = steal();
+                    }
+                    if (task == null) {
+                        searching = false;
+                        searchers.decrementAndGet();
+                        task = await();
+                        if (task == null) {
+                            // wake() counts the woken worker as searching on its behalf
+                            searching = !parked.get();
+                            continue;
+                        }
+                        searching = !leaveIdle();
+                    }
+                    if (searching) {
+                        searching = false;
+                        if (searchers.decrementAndGet() == 0) {
+                            signal();
+                        }
+                    }
+                    task.run();
+                }
+            } finally {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private Runnable steal() {
+            Runnable task = null;
+            for (int i = 1; task == null && i < workers.size(); i++) {
+                task = workers.get((index + i) % workers.size()).tasks.pollLast();
+            }
+            return task;
+        }
+
+        private Runnable findTask() {
+            Runnable task = tasks.pollFirst();
+            return task != null ? task : steal();
+        }
+
+        /**
+         * Marks this worker idle and parks it until {@link #wake()} is called or a task shows up.
+         * Spurious wake-ups only look for a task again. Returns the task found, or {@code null} if woken or interrupted.
+         */
+        private Runnable await() {
+            parked.set(true);
+            idle.add(this);
+            idleWorkers.incrementAndGet();
+            Runnable task = findTask();
+            while (task == null && parked.get() && !isInterrupted()) {
+                if (metrics != null) {
+                    metrics.parked();
+                }
+                LockSupport.park(this);
+                if (parked.get()) {
+                    task = findTask();
+                }
+            }
+            return task;
+        }
+
+        /**
+         * Clears the idle mark of a worker that found a task by itself. Returns {@code false} if
+         * {@link #wake()} has cleared it first.
+         */
+        private boolean leaveIdle() {
+            if (parked.compareAndSet(true, false)) {
+                idleWorkers.decrementAndGet();
+                idle.remove(this);
+                return true;
+            }
+            return false;
+        }
+
+        ParallelMapperImpl mapper() {
+            return ParallelMapperImpl.this;
+        }
+
+        boolean wake() {
+            if (parked.compareAndSet(true, false)) {
+                idleWorkers.decrementAndGet();
+                searchers.incrementAndGet();
+                LockSupport.unpark(this);
+                return true;
+            }
+            return false;
+        }
     }
 
-    private void synchronizedAddTask(Runnable task) throws InterruptedException {
-        synchronized (tasks) {
-            while (tasks.size() >= MAX_TASKS) {
-                tasks.wait();
+    private void signal() {
+        if (searchers.get() == 0) {
+            Worker worker;
+            while ((worker = idle.poll()) != null) {
+                if (worker.wake()) {
+                    break;
+                }
             }
-            tasks.add(task); // possible fail?
-            tasks.notifyAll();
         }
     }
 
-    public ParallelMapperImpl(int threads) {
-        if (threads <= 0) {
-            throw new IllegalArgumentException("Number of threads must be >0");
+    private void addTask(Runnable task) {
+        Thread current = Thread.currentThread();
+        if (current instanceof Worker && ((Worker) current).mapper() == this) {
+            ((Worker) current).tasks.addLast(task);
+        } else {
+            workers.get(Math.floorMod(nextWorker.getAndIncrement(), workers.size())).tasks.addLast(task);
         }
-        this.threads = new ArrayList<>();
-        for (int i =0 ; i< threads; i++)
-            this.threads.add(new Thread(() -> {
+        signal();
+    }
+
+    /**
+     * State of a single {@link #map} call. Workers claim slices of it and put it back at the tail
+     * of their deque after every slice, so concurrent calls are served round-robin.
+     * Slices are sized from the measured cost of an element to take about {@code SLICE_NANOS}.
+     */
+    private class Job<T, R> implements Runnable {
+        private final Function<? super T, ? extends R> function;
+        private final List<? extends T> list;
+        private final Object[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final Queue<RuntimeException> exceptions = new ConcurrentLinkedQueue<>();
+        private volatile double nanosPerElement = SLICE_NANOS;
+
+        Job(Function<? super T, ? extends R> function, List<? extends T> list) {
+            this.function = function;
+            this.list = list;
+            this.results = new Object[list.size()];
+            this.remaining = new AtomicInteger(list.size());
+        }
+
+        @Override
+        public void run() {
+            int from = next.get();
+            int to;
+            do {
+                if (from >= results.length) {
+                    return;
+                }
+                to = from + sliceSize(results.length - from);
+            } while (!next.compareAndSet(from, to));
+            if (to < results.length) {
+                addTask(this);
+            }
+            long start = System.nanoTime();
+            for (int i = from; i < to; i++) {
                 try {
-                    while (!Thread.interrupted()) {
-                        synchronizedRunTask();
+                    results[i] = function.apply(list.get(i));
+                } catch (RuntimeException e) {
+                    exceptions.add(e);
+                    if (metrics != null) {
+                        metrics.exception();
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (metrics != null) {
+                metrics.task(to - from, elapsed);
+            }
+            double measured = (double) elapsed / (to - from);
+            nanosPerElement = (nanosPerElement + measured) / 2;
+            if (remaining.addAndGet(from - to) == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private int sliceSize(int left) {
+            int size = (int) Math.min(MAX_SLICE, SLICE_NANOS / Math.max(1, nanosPerElement));
+            int balanced = left / (2 * workers.size());
+            return Math.max(1, Math.min(left, Math.min(size, Math.max(1, balanced))));
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> await() throws InterruptedException {
+            try {
+                synchronized (this) {
+                    while (remaining.get() > 0) {
+                        wait();
                     }
-                } catch (InterruptedException e) {
-                //     System.err.println(Thread.currentThread().getName() + " isInterrupted: " + e.getMessage());
-                } finally {
-                    Thread.currentThread().interrupt();
                 }
-            }));
-        tasks = new ArrayDeque<>();
-        this.threads.forEach(Thread::start);
+            } catch (InterruptedException e) {
+                next.set(results.length);
+                throw e;
+            }
+            if (!exceptions.isEmpty()) {
+                RuntimeException exception = new RuntimeException("An error occurred while applying function");
+                exceptions.forEach(exception::addSuppressed);
+                throw exception;
+            }
+            return (List<R>) Arrays.asList(results);
+        }
     }
 
-    @Override
-    public <T, R> List<R> map(Function<? super T, ? extends R> function, List<? extends T> list) throws InterruptedException {
-        results = new ArrayList(Collections.nCopies(list.size(), null));
-        sets = 0;
-        List<RuntimeException> runtimeExceptions = new ArrayList<>();
-        for (int i = 0; i < list.size(); i++) {
-            final int index = i;
-            synchronizedAddTask(() -> {
-                R value = null;
+    private static class Failure {
+        private final RuntimeException exception;
+
+        Failure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Results of a {@link #mapStream} call. Closing it stops the stream early: no more input is pulled
+     * or requested, a publisher's subscription is cancelled, elements not yet started are skipped and
+     * {@link #hasNext()} returns {@code false}, also in a consumer blocked on it.
+     */
+    public interface ResultIterator<R> extends Iterator<R>, AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Results of a {@link #mapStream} call. At most {@code window} elements are submitted and not yet
+     * consumed at any time: an iterator source is pulled by the consumer only when there is room,
+     * a publisher is requested one element per consumed result.
+     */
+    private class Pipeline<T, R> implements ResultIterator<R>, Flow.Subscriber<T> {
+        private final Function<? super T, ? extends R> function;
+        private final Iterator<? extends T> input;
+        private final int window;
+        private final Object[] slots;
+        private final Deque<Object> completed;
+        private long submitted;
+        private long consumed;
+        private boolean inputDone;
+        private Throwable inputError;
+        private Flow.Subscription subscription;
+        private volatile boolean closed;
+
+        Pipeline(Function<? super T, ? extends R> function, Iterator<? extends T> input, int window, boolean ordered) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("Window must be >0");
+            }
+            this.function = function;
+            this.input = input;
+            this.window = window;
+            this.slots = ordered ? new Object[window] : null;
+            this.completed = ordered ? null : new ArrayDeque<>();
+            if (ordered) {
+                Arrays.fill(slots, NONE);
+            }
+        }
+
+        private synchronized void submit(T element) {
+            if (closed) {
+                return;
+            }
+            long sequence = submitted++;
+            addTask(() -> {
+                if (closed) {
+                    return;
+                }
+                long start = metrics != null ? System.nanoTime() : 0;
+                Object result;
                 try {
-                    value = function.apply(list.get(index));
+                    R value = function.apply(element);
+                    result = value == null ? NULL : value;
                 } catch (RuntimeException e) {
-                    synchronized (runtimeExceptions) {
-                        runtimeExceptions.add(e);
+                    result = new Failure(e);
+                    if (metrics != null) {
+                        metrics.exception();
                     }
                 }
-                synchronized (results) {
-                    results.set(index, value);
-                    sets++;
-                    if (sets == results.size())
-                    {
-                        results.notify();
-                    }
+                if (metrics != null) {
+                    metrics.task(1, System.nanoTime() - start);
                 }
+                complete(sequence, result);
             });
         }
-        if (!runtimeExceptions.isEmpty()) {
-            RuntimeException exceptions = new RuntimeException("An error occurred while applying function");
-            runtimeExceptions.forEach(exceptions::addSuppressed);
-            throw exceptions;
+
+        private synchronized void complete(long sequence, Object result) {
+            if (closed) {
+                return;
+            }
+            if (slots != null) {
+                slots[(int) (sequence % window)] = result;
+            } else {
+                completed.addLast(result);
+            }
+            notifyAll();
+        }
+
+        private boolean ready() {
+            return slots != null ? slots[(int) (consumed % window)] != NONE : !completed.isEmpty();
         }
-        synchronized (results) {
-            while (sets != results.size()) {
-                results.wait();
+
+        private void fill() {
+            if (input == null) {
+                return;
+            }
+            while (!inputDone && submitted - consumed < window) {
+                if (input.hasNext()) {
+                    submit(input.next());
+                } else {
+                    synchronized (this) {
+                        inputDone = true;
+                    }
+                }
             }
         }
-        return results;
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            synchronized (this) {
+                try {
+                    while (closed || !ready()) {
+                        if (closed) {
+                            return false;
+                        }
+                        if (inputDone && submitted == consumed) {
+                            if (inputError != null) {
+                                throw new RuntimeException("Input failed", inputError);
+                            }
+                            return false;
+                        }
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for results", e);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object result;
+            Flow.Subscription toRequest;
+            synchronized (this) {
+                if (slots != null) {
+                    int slot = (int) (consumed % window);
+                    result = slots[slot];
+                    slots[slot] = NONE;
+                } else {
+                    result = completed.pollFirst();
+                }
+                consumed++;
+                toRequest = subscription;
+            }
+            if (toRequest != null) {
+                toRequest.request(1);
+            }
+            if (result instanceof Failure) {
+                throw new RuntimeException("An error occurred while applying function", ((Failure) result).exception);
+            }
+            @SuppressWarnings("unchecked")
+            R value = result == NULL ? null : (R) result;
+            return value;
+        }
+
+        @Override
+        public void close() {
+            Flow.Subscription toCancel;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                inputDone = true;
+                toCancel = subscription;
+                subscription = null;
+                if (slots != null) {
+                    Arrays.fill(slots, NONE);
+                } else {
+                    completed.clear();
+                }
+                notifyAll();
+            }
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (this) {
+                if (!closed) {
+                    this.subscription = subscription;
+                }
+            }
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(window);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            submit(item);
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            inputError = throwable;
+            inputDone = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            inputDone = true;
+            notifyAll();
+        }
+    }
+
+    public ParallelMapperImpl(int threads) {
+        this(threads, false);
+    }
+
+    /**
+     * With {@code metrics} set, counters are collected and registered as an MXBean until {@link #close()}.
+     */
+    public ParallelMapperImpl(int threads, boolean metrics) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be >0");
+        }
+        workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker(i));
+        }
+        if (metrics) {
+            this.metrics = new MapperMetrics(threads, () -> workers.stream().mapToInt(worker -> worker.tasks.size()).sum(), idleWorkers::get);
+            this.metrics.register();
+        } else {
+            this.metrics = null;
+        }
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Returns metrics of this mapper, or {@code null} if it was created without them.
+     */
+    public MapperMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public <T, R> List<R> map(Function<? super T, ? extends R> function, List<? extends T> list) throws InterruptedException {
+        Job<T, R> job = new Job<>(function, list);
+        if (metrics != null) {
+            metrics.callStarted();
+        }
+        try {
+            if (!list.isEmpty()) {
+                addTask(job);
+            }
+            return job.await();
+        } finally {
+            if (metrics != null) {
+                metrics.callFinished();
+            }
+        }
+    }
+
+    /**
+     * Maps elements of {@code input} lazily, keeping at most {@code window} of them in flight.
+     * Results come in input order if {@code ordered} is set and in completion order otherwise.
+     * A failed element makes the corresponding {@code next()} throw. Close the result to stop early.
+     */
+    public <T, R> ResultIterator<R> mapStream(Function<? super T, ? extends R> function, Iterator<? extends T> input, int window, boolean ordered) {
+        return new Pipeline<T, R>(function, Objects.requireNonNull(input), window, ordered);
+    }
+
+    public <T, R> ResultIterator<R> mapStream(Function<? super T, ? extends R> function, Flow.Publisher<? extends T> input, int window, boolean ordered) {
+        Pipeline<T, R> pipeline = new Pipeline<>(function, null, window, ordered);
+        input.subscribe(pipeline);
+        return pipeline;
     }
 
     @Override
     public void close() {
-        threads.forEach(Thread::interrupt);
-        IterativeParallelism.joinAlL(threads);
+        workers.forEach(Thread::interrupt);
+        IterativeParallelism.joinAlL(new ArrayList<>(workers));
+        if (metrics != null) {
+            metrics.unregister();
+        }
     }
 }
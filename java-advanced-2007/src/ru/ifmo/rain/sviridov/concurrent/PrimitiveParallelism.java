@@ -0,0 +1,323 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongPredicate;
+
+/**
+ * Reductions over primitive arrays and buffers that run on the backends of {@link IterativeParallelism}
+ * without boxing elements. Buffers are processed from their position to their limit, arrays are wrapped
+ * into heap buffers. Every operation goes through {@link #reduce}, which boxes one result per range.
+ */
+public class PrimitiveParallelism {
+    private static final int INLINE_THRESHOLD = 1 << 13;
+
+    private final IterativeParallelism iterativeParallelism;
+
+    public PrimitiveParallelism() {
+        this(new IterativeParallelism());
+    }
+
+    public PrimitiveParallelism(ParallelMapper parallelMapper) {
+        this(new IterativeParallelism(parallelMapper));
+    }
+
+    public PrimitiveParallelism(IterativeParallelism.Backend backend) {
+        this(new IterativeParallelism(backend));
+    }
+
+    private PrimitiveParallelism(IterativeParallelism iterativeParallelism) {
+        this.iterativeParallelism = iterativeParallelism;
+    }
+
+    private interface RangeFunction<R> {
+        R apply(int from, int to);
+    }
+
+    /**
+     * Splits {@code [0, size)} into ranges, applies {@code range} to each of them and combines the results in order.
+     * Small inputs are processed in the calling thread.
+     */
+    private <R> R reduce(int nofthreads, int size, RangeFunction<R> range, BinaryOperator<R> combine) throws InterruptedException {
+        if (nofthreads <= 1 || size < INLINE_THRESHOLD) {
+            return range.apply(0, size);
+        }
+        return iterativeParallelism.execute(IterativeParallelism.split(nofthreads, size), bounds -> range.apply(bounds[0], bounds[1]))
+                .stream().reduce(combine).orElseThrow();
+    }
+
+    /**
+     * Counts indices in {@code [0, size)} matching {@code predicate}.
+     */
+    private long count(int nofthreads, int size, IntPredicate predicate) throws InterruptedException {
+        return reduce(nofthreads, size, (from, to) -> {
+            long count = 0;
+            for (int j = from; j < to; j++) {
+                if (predicate.test(j)) {
+                    count++;
+                }
+            }
+            return count;
+        }, Long::sum);
+    }
+
+    /**
+     * Builds a histogram of {@code buckets} buckets, {@code bucket} maps an index to its bucket or to {@code -1}.
+     */
+    private long[] histogram(int nofthreads, int size, int buckets, IntUnaryOperator bucket) throws InterruptedException {
+        return reduce(nofthreads, size, (from, to) -> {
+            long[] histogram = new long[buckets];
+            for (int j = from; j < to; j++) {
+                int b = bucket.applyAsInt(j);
+                if (b >= 0) {
+                    histogram[b]++;
+                }
+            }
+            return histogram;
+        }, (left, right) -> {
+            for (int j = 0; j < buckets; j++) {
+                left[j] += right[j];
+            }
+            return left;
+        });
+    }
+
+    private static long bucketWidth(long from, long to, int buckets) {
+        if (buckets <= 0 || from >= to) {
+            throw new IllegalArgumentException("Empty histogram range or no buckets");
+        }
+        long width = Long.divideUnsigned(to - from, buckets);
+        return Long.remainderUnsigned(to - from, buckets) == 0 ? width : width + 1;
+    }
+
+    private static void requireNonEmpty(int size) {
+        if (size == 0) {
+            throw new NoSuchElementException("No elements");
+        }
+    }
+
+    public long sum(int i, IntBuffer buffer) throws InterruptedException {
+        IntBuffer values = buffer.slice();
+        return reduce(i, values.limit(), (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values.get(j);
+            }
+            return sum;
+        }, Long::sum);
+    }
+
+    public int maximum(int i, IntBuffer buffer) throws InterruptedException {
+        IntBuffer values = buffer.slice();
+        requireNonEmpty(values.limit());
+        return reduce(i, values.limit(), (from, to) -> {
+            int max = Integer.MIN_VALUE;
+            for (int j = from; j < to; j++) {
+                max = Math.max(max, values.get(j));
+            }
+            return max;
+        }, Math::max);
+    }
+
+    public int minimum(int i, IntBuffer buffer) throws InterruptedException {
+        IntBuffer values = buffer.slice();
+        requireNonEmpty(values.limit());
+        return reduce(i, values.limit(), (from, to) -> {
+            int min = Integer.MAX_VALUE;
+            for (int j = from; j < to; j++) {
+                min = Math.min(min, values.get(j));
+            }
+            return min;
+        }, Math::min);
+    }
+
+    public long countIf(int i, IntBuffer buffer, IntPredicate predicate) throws InterruptedException {
+        IntBuffer values = buffer.slice();
+        return count(i, values.limit(), j -> predicate.test(values.get(j)));
+    }
+
+    /**
+     * Counts values falling into each of {@code buckets} equal-width buckets covering {@code [from, to)}.
+     * Values outside of the range are ignored.
+     */
+    public long[] histogram(int i, IntBuffer buffer, int from, int to, int buckets) throws InterruptedException {
+        IntBuffer values = buffer.slice();
+        long width = bucketWidth(from, to, buckets);
+        return histogram(i, values.limit(), buckets, j -> {
+            int value = values.get(j);
+            return value >= from && value < to ? (int) (((long) value - from) / width) : -1;
+        });
+    }
+
+    public long sum(int i, LongBuffer buffer) throws InterruptedException {
+        LongBuffer values = buffer.slice();
+        return reduce(i, values.limit(), (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values.get(j);
+            }
+            return sum;
+        }, Long::sum);
+    }
+
+    public long maximum(int i, LongBuffer buffer) throws InterruptedException {
+        LongBuffer values = buffer.slice();
+        requireNonEmpty(values.limit());
+        return reduce(i, values.limit(), (from, to) -> {
+            long max = Long.MIN_VALUE;
+            for (int j = from; j < to; j++) {
+                max = Math.max(max, values.get(j));
+            }
+            return max;
+        }, Math::max);
+    }
+
+    public long minimum(int i, LongBuffer buffer) throws InterruptedException {
+        LongBuffer values = buffer.slice();
+        requireNonEmpty(values.limit());
+        return reduce(i, values.limit(), (from, to) -> {
+            long min = Long.MAX_VALUE;
+            for (int j = from; j < to; j++) {
+                min = Math.min(min, values.get(j));
+            }
+            return min;
+        }, Math::min);
+    }
+
+    public long countIf(int i, LongBuffer buffer, LongPredicate predicate) throws InterruptedException {
+        LongBuffer values = buffer.slice();
+        return count(i, values.limit(), j -> predicate.test(values.get(j)));
+    }
+
+    public long[] histogram(int i, LongBuffer buffer, long from, long to, int buckets) throws InterruptedException {
+        LongBuffer values = buffer.slice();
+        long width = bucketWidth(from, to, buckets);
+        return histogram(i, values.limit(), buckets, j -> {
+            long value = values.get(j);
+            return value >= from && value < to ? (int) Long.divideUnsigned(value - from, width) : -1;
+        });
+    }
+
+    public double sum(int i, DoubleBuffer buffer) throws InterruptedException {
+        DoubleBuffer values = buffer.slice();
+        return reduce(i, values.limit(), (from, to) -> {
+            double sum = 0;
+            for (int j = from; j < to; j++) {
+                sum += values.get(j);
+            }
+            return sum;
+        }, Double::sum);
+    }
+
+    public double maximum(int i, DoubleBuffer buffer) throws InterruptedException {
+        DoubleBuffer values = buffer.slice();
+        requireNonEmpty(values.limit());
+        return reduce(i, values.limit(), (from, to) -> {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = from; j < to; j++) {
+                max = Math.max(max, values.get(j));
+            }
+            return max;
+        }, Math::max);
+    }
+
+    public double minimum(int i, DoubleBuffer buffer) throws InterruptedException {
+        DoubleBuffer values = buffer.slice();
+        requireNonEmpty(values.limit());
+        return reduce(i, values.limit(), (from, to) -> {
+            double min = Double.POSITIVE_INFINITY;
+            for (int j = from; j < to; j++) {
+                min = Math.min(min, values.get(j));
+            }
+            return min;
+        }, Math::min);
+    }
+
+    public long countIf(int i, DoubleBuffer buffer, DoublePredicate predicate) throws InterruptedException {
+        DoubleBuffer values = buffer.slice();
+        return count(i, values.limit(), j -> predicate.test(values.get(j)));
+    }
+
+    /**
+     * Same as the integer histogram; {@code NaN} values are ignored.
+     */
+    public long[] histogram(int i, DoubleBuffer buffer, double from, double to, int buckets) throws InterruptedException {
+        if (buckets <= 0 || !(from < to)) {
+            throw new IllegalArgumentException("Empty histogram range or no buckets");
+        }
+        DoubleBuffer values = buffer.slice();
+        double scale = buckets / (to - from);
+        return histogram(i, values.limit(), buckets, j -> {
+            double value = values.get(j);
+            return value >= from && value < to ? Math.min((int) ((value - from) * scale), buckets - 1) : -1;
+        });
+    }
+
+    public long sum(int i, int[] values) throws InterruptedException {
+        return sum(i, IntBuffer.wrap(values));
+    }
+
+    public int maximum(int i, int[] values) throws InterruptedException {
+        return maximum(i, IntBuffer.wrap(values));
+    }
+
+    public int minimum(int i, int[] values) throws InterruptedException {
+        return minimum(i, IntBuffer.wrap(values));
+    }
+
+    public long countIf(int i, int[] values, IntPredicate predicate) throws InterruptedException {
+        return countIf(i, IntBuffer.wrap(values), predicate);
+    }
+
+    public long[] histogram(int i, int[] values, int from, int to, int buckets) throws InterruptedException {
+        return histogram(i, IntBuffer.wrap(values), from, to, buckets);
+    }
+
+    public long sum(int i, long[] values) throws InterruptedException {
+        return sum(i, LongBuffer.wrap(values));
+    }
+
+    public long maximum(int i, long[] values) throws InterruptedException {
+        return maximum(i, LongBuffer.wrap(values));
+    }
+
+    public long minimum(int i, long[] values) throws InterruptedException {
+        return minimum(i, LongBuffer.wrap(values));
+    }
+
+    public long countIf(int i, long[] values, LongPredicate predicate) throws InterruptedException {
+        return countIf(i, LongBuffer.wrap(values), predicate);
+    }
+
+    public long[] histogram(int i, long[] values, long from, long to, int buckets) throws InterruptedException {
+        return histogram(i, LongBuffer.wrap(values), from, to, buckets);
+    }
+
+    public double sum(int i, double[] values) throws InterruptedException {
+        return sum(i, DoubleBuffer.wrap(values));
+    }
+
+    public double maximum(int i, double[] values) throws InterruptedException {
+        return maximum(i, DoubleBuffer.wrap(values));
+    }
+
+    public double minimum(int i, double[] values) throws InterruptedException {
+        return minimum(i, DoubleBuffer.wrap(values));
+    }
+
+    public long countIf(int i, double[] values, DoublePredicate predicate) throws InterruptedException {
+        return countIf(i, DoubleBuffer.wrap(values), predicate);
+    }
+
+    public long[] histogram(int i, double[] values, double from, double to, int buckets) throws InterruptedException {
+        return histogram(i, DoubleBuffer.wrap(values), from, to, buckets);
+    }
+}
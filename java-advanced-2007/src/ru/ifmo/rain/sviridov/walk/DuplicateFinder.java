@@ -0,0 +1,322 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static java.nio.file.FileVisitResult.CONTINUE;
+
+class DuplicateFinder {
+    private static final int PARTIAL_SIZE = 4096;
+    private static final int MIN_CHUNK = 1 << 12;
+    private static final int MAX_CHUNK = 1 << 16;
+    private static final int GROUP_BUFFERS = 1 << 24;
+    private static final int MAX_OPEN = 256;
+
+    private final HashingEngine hashingEngine;
+    private final HashIndex hashIndex;
+    private final WalkStatistics walkStatistics;
+    private final int threads;
+
+    DuplicateFinder(HashingEngine hashingEngine, HashIndex hashIndex, WalkStatistics walkStatistics, int threads) {
+        this.hashingEngine = hashingEngine;
+        this.hashIndex = hashIndex;
+        this.walkStatistics = walkStatistics;
+        this.threads = threads;
+    }
+
+    void run(BufferedReader bufferedReader, BufferedWriter bufferedWriter) throws RecursiveWalkException {
+        Map<Long, List<Candidate>> bySize = new HashMap<>();
+        Set<Path> seen = new HashSet<>();
+        String name;
+        while (true) {
+            try {
+                if ((name = bufferedReader.readLine()) == null) break;
+            } catch (IOException e) {
+                throw new RecursiveWalkException("Can't read from input-file: " + e.getMessage());
+            }
+            collect(name, bySize, seen);
+        }
+
+        List<List<Candidate>> groups = bySize.values().stream()
+                .filter(group -> group.size() > 1)
+                .collect(Collectors.toList());
+        groups = regroup(groups, this::partialHash, false);
+        if (hashingEngine.algorithm().isCryptographic()) {
+            groups = regroup(groups, this::fullHash, true);
+        } else {
+            groups = compare(groups);
+        }
+
+        HashAlgorithm algorithm = hashingEngine.algorithm();
+        groups.sort(Comparator.<List<Candidate>>comparingLong(group -> -group.get(0).size)
+                .thenComparing(group -> group.get(0).file));
+        try {
+            for (List<Candidate> group : groups) {
+                for (Candidate candidate : group) {
+                    bufferedWriter.write(algorithm.format(candidate.digest) + " " + candidate.file + "\n");
+                }
+                bufferedWriter.write("\n");
+            }
+        } catch (IOException e) {
+            throw new RecursiveWalkException("Error writing to output-file: " + e.getMessage());
+        }
+    }
+
+    private void collect(String name, Map<Long, List<Candidate>> bySize, Set<Path> seen) {
+        try {
+            Files.walkFileTree(Paths.get(name), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && seen.add(file.toAbsolutePath().normalize())) {
+                        bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(new Candidate(file, attrs));
+                    }
+                    return CONTINUE;
+                }
+            });
+        } catch (InvalidPathException | IOException e) {
+            walkStatistics.error(WalkStatistics.ErrorKind.WALK, "Error while walking " + name + ": " + e.getMessage());
+        }
+    }
+
+    private byte[] partialHash(Candidate candidate) throws IOException {
+        try (FileChannel channel = FileChannel.open(candidate.file, StandardOpenOption.READ)) {
+            return hashingEngine.hashEnds(channel, PARTIAL_SIZE);
+        }
+    }
+
+    private byte[] fullHash(Candidate candidate) throws IOException {
+        byte[] known = hashIndex == null ? null : hashIndex.lookup(candidate.file, candidate.attrs);
+        if (known != null) {
+            return known;
+        }
+        byte[] digest;
+        try (FileChannel channel = FileChannel.open(candidate.file, StandardOpenOption.READ)) {
+            digest = hashingEngine.hash(channel);
+        }
+        if (hashIndex != null) {
+            try {
+                hashIndex.store(candidate.file, candidate.attrs, digest);
+            } catch (IOException e) {
+                walkStatistics.error(WalkStatistics.ErrorKind.INDEX, "Error writing to index-file: " + e.getMessage());
+            }
+        }
+        return digest;
+    }
+
+    private List<List<Candidate>> regroup(List<List<Candidate>> groups, Hasher hasher, boolean full) throws RecursiveWalkException {
+        List<Candidate> pending = groups.stream()
+                .flatMap(List::stream)
+                .filter(candidate -> !full || candidate.size > 2L * PARTIAL_SIZE)
+                .collect(Collectors.toList());
+        if (threads > 0) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> pending.parallelStream().forEach(candidate -> update(candidate, hasher, full))).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RecursiveWalkException("Hashing was interrupted: " + e.getMessage());
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            pending.forEach(candidate -> update(candidate, hasher, full));
+        }
+
+        List<List<Candidate>> result = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            group.stream()
+                    .filter(candidate -> candidate.digest != null)
+                    .collect(Collectors.groupingBy(candidate -> hashingEngine.algorithm().format(candidate.digest)))
+                    .values().stream()
+                    .filter(same -> same.size() > 1)
+                    .forEach(same -> {
+                        same.sort(Comparator.comparing(candidate -> candidate.file));
+                        result.add(same);
+                    });
+        }
+        return result;
+    }
+
+    /**
+     * Splits groups of equal partial digests into groups of byte-for-byte identical files,
+     * so a collision of a weak digest is never reported as a duplicate. The files of a group
+     * are read in lockstep, each exactly once, and hashed on the way; a file that fails
+     * to read leaves only its own group.
+     */
+    private List<List<Candidate>> compare(List<List<Candidate>> groups) throws RecursiveWalkException {
+        if (threads > 0) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                return pool.submit(() -> groups.parallelStream()
+                        .flatMap(group -> split(group).stream())
+                        .collect(Collectors.toList())).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RecursiveWalkException("Comparing was interrupted: " + e.getMessage());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return groups.stream()
+                .flatMap(group -> split(group).stream())
+                .collect(Collectors.toList());
+    }
+
+    private List<List<Candidate>> split(List<Candidate> group) {
+        int chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, GROUP_BUFFERS / group.size()));
+        List<List<Reader>> open = new ArrayList<>();
+        List<Reader> readers = new ArrayList<>();
+        for (Candidate candidate : group) {
+            readers.add(new Reader(candidate, chunk, readers.size() < MAX_OPEN));
+        }
+        open.add(readers);
+
+        List<List<Candidate>> result = new ArrayList<>();
+        try {
+            for (long position = 0; !open.isEmpty(); position += chunk) {
+                List<List<Reader>> next = new ArrayList<>();
+                for (List<Reader> same : open) {
+                    for (List<Reader> part : partition(same, position)) {
+                        if (part.size() < 2) {
+                            part.forEach(Reader::close);
+                        } else if (part.get(0).buffer.limit() < chunk) {
+                            result.add(finish(part));
+                        } else {
+                            next.add(part);
+                        }
+                    }
+                }
+                open = next;
+            }
+        } finally {
+            open.forEach(same -> same.forEach(Reader::close));
+        }
+        return result;
+    }
+
+    private List<List<Reader>> partition(List<Reader> same, long position) {
+        List<List<Reader>> parts = new ArrayList<>();
+        for (Reader reader : same) {
+            try {
+                reader.read(position);
+            } catch (IOException | InvalidPathException e) {
+                walkStatistics.error(WalkStatistics.ErrorKind.READ, "Error while comparing a file "
+                        + reader.candidate.file + " : " + e.getMessage());
+                reader.close();
+                continue;
+            }
+            parts.stream()
+                    .filter(part -> part.get(0).buffer.equals(reader.buffer))
+                    .findFirst()
+                    .orElseGet(() -> {
+                        parts.add(new ArrayList<>());
+                        return parts.get(parts.size() - 1);
+                    })
+                    .add(reader);
+        }
+        return parts;
+    }
+
+    private List<Candidate> finish(List<Reader> same) {
+        List<Candidate> result = new ArrayList<>();
+        for (Reader reader : same) {
+            reader.close();
+            Candidate candidate = reader.candidate;
+            candidate.digest = reader.function.digest();
+            if (hashIndex != null) {
+                try {
+                    hashIndex.store(candidate.file, candidate.attrs, candidate.digest);
+                } catch (IOException e) {
+                    walkStatistics.error(WalkStatistics.ErrorKind.INDEX, "Error writing to index-file: " + e.getMessage());
+                }
+            }
+            result.add(candidate);
+        }
+        return result;
+    }
+
+    private void update(Candidate candidate, Hasher hasher, boolean full) {
+        try {
+            long start = System.nanoTime();
+            candidate.digest = hasher.hash(candidate);
+            if (!full) {
+                walkStatistics.hashed(candidate.file, System.nanoTime() - start);
+            }
+        } catch (IOException | InvalidPathException e) {
+            walkStatistics.error(WalkStatistics.ErrorKind.READ, "Error while hashing a file " + candidate.file.toString() + " : " + e.getMessage());
+            candidate.digest = null;
+        }
+    }
+
+    private interface Hasher {
+        byte[] hash(Candidate candidate) throws IOException;
+    }
+
+    /**
+     * Reads one file of a compared group chunk by chunk. Only the first {@link #MAX_OPEN}
+     * files of a group keep their channel open between chunks, the rest reopen it.
+     */
+    private class Reader {
+        private final Candidate candidate;
+        private final HashFunction function = hashingEngine.algorithm().create();
+        private final ByteBuffer buffer;
+        private final boolean keepOpen;
+        private FileChannel channel;
+
+        Reader(Candidate candidate, int chunk, boolean keepOpen) {
+            this.candidate = candidate;
+            this.buffer = ByteBuffer.allocate(chunk);
+            this.keepOpen = keepOpen;
+        }
+
+        void read(long position) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(candidate.file, StandardOpenOption.READ);
+            }
+            try {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) != -1) {
+                    // keep reading until the buffer is full or the file ends
+                }
+                buffer.flip();
+                function.update(buffer.array(), 0, buffer.limit());
+            } finally {
+                if (!keepOpen) {
+                    close();
+                }
+            }
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // nothing was written, so nothing is lost
+                }
+                channel = null;
+            }
+        }
+    }
+
+    private static class Candidate {
+        private final Path file;
+        private final BasicFileAttributes attrs;
+        private final long size;
+        private byte[] digest;
+
+        Candidate(Path file, BasicFileAttributes attrs) {
+            this.file = file;
+            this.attrs = attrs;
+            this.size = attrs.size();
+        }
+
+    }
+}
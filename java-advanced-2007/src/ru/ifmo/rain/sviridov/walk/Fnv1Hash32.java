@@ -0,0 +1,38 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.nio.ByteBuffer;
+
+class Fnv1Hash32 implements HashFunction {
+    private static final int FNV_32_PRIME = 0x01000193;
+    private static final int FNV_32_OFFSET = 0x811c9dc5;
+
+    private int hval = FNV_32_OFFSET;
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        int h = hval;
+        for (int i = offset; i < offset + length; i++) {
+            h *= FNV_32_PRIME;
+            h ^= bytes[i] & 0xff;
+        }
+        hval = h;
+    }
+
+    @Override
+    public void update(ByteBuffer bytes) {
+        int h = hval;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            h *= FNV_32_PRIME;
+            h ^= bytes.get(i) & 0xff;
+        }
+        hval = h;
+        bytes.position(bytes.limit());
+    }
+
+    @Override
+    public byte[] digest() {
+        int h = hval;
+        hval = FNV_32_OFFSET;
+        return new byte[]{(byte) (h >>> 24), (byte) (h >>> 16), (byte) (h >>> 8), (byte) h};
+    }
+}
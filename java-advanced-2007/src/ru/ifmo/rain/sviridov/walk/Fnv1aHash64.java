@@ -0,0 +1,38 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.nio.ByteBuffer;
+
+class Fnv1aHash64 implements HashFunction {
+    private static final long FNV_64_PRIME = 0x100000001b3L;
+    private static final long FNV_64_OFFSET = 0xcbf29ce484222325L;
+
+    private long hval = FNV_64_OFFSET;
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        long h = hval;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= FNV_64_PRIME;
+        }
+        hval = h;
+    }
+
+    @Override
+    public void update(ByteBuffer bytes) {
+        long h = hval;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            h ^= bytes.get(i) & 0xff;
+            h *= FNV_64_PRIME;
+        }
+        hval = h;
+        bytes.position(bytes.limit());
+    }
+
+    @Override
+    public byte[] digest() {
+        long h = hval;
+        hval = FNV_64_OFFSET;
+        return HashAlgorithm.toBytes(h);
+    }
+}
@@ -0,0 +1,77 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+public enum HashAlgorithm {
+    FNV1_32("fnv1-32", 4, Fnv1Hash32::new),
+    FNV1A_64("fnv1a-64", 8, Fnv1aHash64::new),
+    XXHASH_64("xxhash64", 8, XxHash64::new),
+    SHA_256("sha-256", 32, Sha256Hash::new);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String name;
+    private final int length;
+    private final Supplier<HashFunction> factory;
+
+    HashAlgorithm(String name, int length, Supplier<HashFunction> factory) {
+        this.name = name;
+        this.length = length;
+        this.factory = factory;
+    }
+
+    public static HashAlgorithm forName(String name) {
+        return Arrays.stream(values())
+                .filter(algorithm -> algorithm.name.equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown hash algorithm " + name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public HashFunction create() {
+        return factory.get();
+    }
+
+    /**
+     * Whether equal digests may be taken as equal content without comparing the bytes.
+     */
+    public boolean isCryptographic() {
+        return this == SHA_256;
+    }
+
+    public byte[] zero() {
+        return new byte[length];
+    }
+
+    /**
+     * FNV-1 32 keeps the signed decimal form RecursiveWalk has always printed, the rest are hex.
+     */
+    public String format(byte[] digest) {
+        if (this == FNV1_32) {
+            return Integer.toString((digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | digest[3] & 0xff);
+        }
+        char[] chars = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    static byte[] toBytes(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,30 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.util.Random;
+
+public class HashBenchmark {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long WARMUP_BYTES = 1L << 30;
+    private static final long MEASURED_BYTES = 2L << 30;
+
+    public static void main(String[] args) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        new Random(0).nextBytes(buffer);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            HashFunction function = algorithm.create();
+            run(function, buffer, WARMUP_BYTES);
+            long start = System.nanoTime();
+            byte[] digest = run(function, buffer, MEASURED_BYTES);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%-10s %8.1f MB/s  %s", algorithm.getName(),
+                    MEASURED_BYTES / seconds / (1 << 20), algorithm.format(digest)));
+        }
+    }
+
+    private static byte[] run(HashFunction function, byte[] buffer, long bytes) {
+        for (long done = 0; done < bytes; done += buffer.length) {
+            function.update(buffer, 0, buffer.length);
+        }
+        return function.digest();
+    }
+}
@@ -0,0 +1,18 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.nio.ByteBuffer;
+
+public interface HashFunction {
+    void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Passes the remaining bytes of {@code bytes}, which may be direct or mapped, without copying them
+     * to the heap, and moves its position to the limit.
+     */
+    void update(ByteBuffer bytes);
+
+    /**
+     * Returns the hash of all bytes passed since the last digest and resets the function.
+     */
+    byte[] digest();
+}
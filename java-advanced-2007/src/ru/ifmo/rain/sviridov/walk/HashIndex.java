@@ -0,0 +1,224 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of file hashes. Every record names its algorithm, so one file keeps a separate index
+ * per algorithm and a run with another {@code -a} leaves the records of the others in place.
+ * Once superseded records make up most of the log, it is compacted to the current record of every file,
+ * dropping files that no longer exist. A run over a part of the tree keeps the records of the rest.
+ */
+class HashIndex implements Closeable {
+    private static final int MAGIC = 0x57414c4b;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD = 1 << 20;
+    private static final int MIN_COMPACTION = 1024;
+
+    private final Path path;
+    private final HashAlgorithm algorithm;
+    private final Map<String, Record> records;
+    private final Map<String, byte[]> others;
+    private final DataOutputStream log;
+    private long logged;
+
+    private HashIndex(Path path, HashAlgorithm algorithm, Map<String, Record> records, Map<String, byte[]> others,
+                      long logged, long validLength) throws IOException {
+        this.path = path;
+        this.algorithm = algorithm;
+        this.records = records;
+        this.others = others;
+        this.logged = logged;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(validLength);
+        }
+        log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND), 1 << 16));
+        if (validLength == 0) {
+            writeHeader(log);
+        }
+    }
+
+    /**
+     * Opens the index at {@code path}, creating it if it is missing or empty.
+     *
+     * @throws IOException if the file exists but is not an index of a supported version
+     */
+    static HashIndex open(Path path, HashAlgorithm algorithm) throws IOException {
+        Map<String, Record> records = new ConcurrentHashMap<>();
+        Map<String, byte[]> others = new HashMap<>();
+        long logged = 0;
+        long validLength = 0;
+        if (Files.exists(path) && Files.size(path) > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                try {
+                    if (in.readInt() != MAGIC) {
+                        throw new IOException("Not an index-file: " + path);
+                    }
+                    if (in.readInt() != VERSION) {
+                        throw new IOException("Unsupported index-file version: " + path);
+                    }
+                } catch (EOFException e) {
+                    throw new IOException("Not an index-file: " + path);
+                }
+                validLength = HEADER_SIZE;
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    String name = record.readUTF();
+                    String key = record.readUTF();
+                    if (name.equals(algorithm.getName())) {
+                        records.put(key, new Record(record.readLong(), record.readLong(), record.readUTF(),
+                                record.readNBytes(algorithm.length())));
+                    } else {
+                        others.put(name + '\0' + key, payload);
+                    }
+                    logged++;
+                    validLength += 8 + length;
+                }
+            } catch (EOFException e) {
+                // torn tail record, everything before it is kept
+            }
+        }
+        return new HashIndex(path, algorithm, records, others, logged, validLength);
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private static long modified(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    byte[] lookup(Path file, BasicFileAttributes attrs) {
+        Record record = records.get(key(file));
+        if (record != null && record.size == attrs.size() && record.modified == modified(attrs)
+                && record.fileKey.equals(fileKey(attrs))) {
+            return record.hash;
+        }
+        return null;
+    }
+
+    void store(Path file, BasicFileAttributes attrs, byte[] hash) throws IOException {
+        String key = key(file);
+        Record record = new Record(attrs.size(), modified(attrs), fileKey(attrs), hash);
+        records.put(key, record);
+        byte[] payload = payload(key, record);
+        synchronized (log) {
+            append(log, payload);
+            logged++;
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private byte[] payload(String key, Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + key.length());
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeUTF(algorithm.getName());
+        payload.writeUTF(key);
+        payload.writeLong(record.size);
+        payload.writeLong(record.modified);
+        payload.writeUTF(record.fileKey);
+        payload.write(record.hash);
+        return bytes.toByteArray();
+    }
+
+    private static void append(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private long live() {
+        return others.size() + records.size();
+    }
+
+    private static boolean exists(String key) {
+        return Files.exists(Paths.get(key));
+    }
+
+    private void compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            writeHeader(out);
+            for (Map.Entry<String, byte[]> entry : others.entrySet()) {
+                if (exists(entry.getKey().substring(entry.getKey().indexOf('\0') + 1))) {
+                    append(out, entry.getValue());
+                }
+            }
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                if (exists(entry.getKey())) {
+                    append(out, payload(entry.getKey(), entry.getValue()));
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void flush() throws IOException {
+        synchronized (log) {
+            log.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (log) {
+            log.close();
+            if (logged > MIN_COMPACTION && logged > 2L * live()) {
+                compact();
+            }
+        }
+    }
+
+    private static class Record {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final byte[] hash;
+
+        Record(long size, long modified, String fileKey, byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+class HashingEngine {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAPPED_THRESHOLD = 1L << 24;
+    private static final long MAPPED_SEGMENT = 1L << 30;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final HashAlgorithm algorithm;
+    private final ThreadLocal<HashFunction> functions;
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    HashingEngine(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        functions = ThreadLocal.withInitial(algorithm::create);
+    }
+
+    HashAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    byte[] hash(FileChannel channel) throws IOException {
+        long start = System.nanoTime();
+        long size = channel.size();
+        HashFunction function = functions.get();
+        try {
+            if (size >= MAPPED_THRESHOLD) {
+                hashMapped(channel, size, function);
+            } else {
+                hashBuffered(channel, function);
+            }
+        } catch (IOException | RuntimeException e) {
+            function.digest();
+            throw e;
+        }
+        byte[] digest = function.digest();
+        nanos.add(System.nanoTime() - start);
+        return digest;
+    }
+
+    byte[] hashEnds(FileChannel channel, int length) throws IOException {
+        long start = System.nanoTime();
+        long size = channel.size();
+        HashFunction function = functions.get();
+        try {
+            if (size <= 2L * length) {
+                hashBuffered(channel, function);
+            } else {
+                hashRange(channel, 0, length, function);
+                hashRange(channel, size - length, length, function);
+            }
+        } catch (IOException | RuntimeException e) {
+            function.digest();
+            throw e;
+        }
+        byte[] digest = function.digest();
+        nanos.add(System.nanoTime() - start);
+        return digest;
+    }
+
+    /**
+     * Hashes {@code length} bytes from {@code position}, or up to the end of the file if it is shorter.
+     */
+    private void hashRange(FileChannel channel, long position, int length, HashFunction function) throws IOException {
+        byte[] buffer = BUFFERS.get();
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        for (int done = 0; done < length; ) {
+            wrapper.clear().limit(Math.min(buffer.length, length - done));
+            int read = channel.read(wrapper, position + done);
+            if (read == -1) {
+                break;
+            }
+            function.update(buffer, 0, read);
+            bytes.add(read);
+            done += read;
+        }
+    }
+
+    private void hashBuffered(FileChannel channel, HashFunction function) throws IOException {
+        byte[] buffer = BUFFERS.get();
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        int read;
+        while ((read = channel.read(wrapper.clear())) != -1) {
+            function.update(buffer, 0, read);
+            bytes.add(read);
+        }
+    }
+
+    private void hashMapped(FileChannel channel, long size, HashFunction function) throws IOException {
+        for (long position = 0; position < size; position += MAPPED_SEGMENT) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_SEGMENT, size - position));
+            function.update(segment);
+            bytes.add(segment.capacity());
+        }
+    }
+
+    long bytes() {
+        return bytes.sum();
+    }
+
+    double bytesPerSecond() {
+        long spent = nanos.sum();
+        return spent == 0 ? 0 : bytes.sum() * 1e9 / spent;
+    }
+}
@@ -0,0 +1,255 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class ManifestReader implements Closeable, Iterable<ManifestReader.Entry> {
+    private static final long WINDOW = 1L << 26;
+
+    private final FileChannel channel;
+    private final HashAlgorithm algorithm;
+    private final long entries;
+    private final long indexOffset;
+    private final int blockEntries;
+    private final LongBuffer index;
+
+    private ManifestReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long length = channel.size();
+        ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, length - ManifestWriter.FOOTER_SIZE, ManifestWriter.FOOTER_SIZE);
+        entries = footer.getLong();
+        indexOffset = footer.getLong();
+        blockEntries = footer.getInt();
+        if (footer.getInt() != ManifestWriter.MAGIC || blockEntries <= 0) {
+            throw new IOException("Not a walk manifest");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, 300));
+        if (header.getInt() != ManifestWriter.MAGIC || header.getInt() != ManifestWriter.VERSION) {
+            throw new IOException("Unsupported walk manifest version");
+        }
+        byte[] name = new byte[header.get()];
+        header.get(name);
+        algorithm = HashAlgorithm.forName(new String(name, StandardCharsets.US_ASCII));
+        if (header.getInt() != algorithm.length()) {
+            throw new IOException("Hash length doesn't match " + algorithm.getName());
+        }
+        long blocks = (entries + blockEntries - 1) / blockEntries;
+        index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, blocks * Long.BYTES).asLongBuffer();
+    }
+
+    public static ManifestReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new ManifestReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupted walk manifest: " + e.getMessage());
+        }
+    }
+
+    public long size() {
+        return entries;
+    }
+
+    public HashAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    public Cursor cursor() throws IOException {
+        return cursor(0);
+    }
+
+    public Cursor cursor(long entry) throws IOException {
+        if (entry < 0 || entry > entries) {
+            throw new IndexOutOfBoundsException("Entry " + entry + " is out of [0, " + entries + "]");
+        }
+        Cursor cursor = new Cursor();
+        cursor.seek(entry);
+        return cursor;
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        Cursor cursor;
+        try {
+            cursor = cursor();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read manifest: " + e.getMessage());
+        }
+        return new Iterator<>() {
+            private boolean ready;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready) {
+                    try {
+                        hasNext = cursor.next();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Can't read manifest: " + e.getMessage());
+                    }
+                    ready = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                byte[] hash = new byte[algorithm.length()];
+                cursor.hash().get(hash);
+                return new Entry(cursor.path(), hash, cursor.size(), cursor.modified());
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Forward-only view of the entries that decodes straight from the mapped file.
+     * Accessors describe the entry returned by the last successful {@link #next()}.
+     */
+    public class Cursor {
+        private ByteBuffer window;
+        private long windowStart = -1;
+        private long next;
+        private byte[] path = new byte[256];
+        private int pathLength;
+        private int hashPosition;
+        private long size;
+        private long modified;
+
+        private void seek(long entry) throws IOException {
+            next = entry - entry % blockEntries;
+            while (next < entry) {
+                next();
+            }
+        }
+
+        private void enterBlock(long block) throws IOException {
+            long start = index.get((int) block);
+            long end = block + 1 < index.limit() ? index.get((int) block + 1) : indexOffset;
+            if (window == null || start < windowStart || end > windowStart + window.limit()) {
+                windowStart = start;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(indexOffset - start, Math.max(WINDOW, end - start)));
+            }
+            window.position((int) (start - windowStart));
+            pathLength = 0;
+        }
+
+        public boolean next() throws IOException {
+            if (next >= entries) {
+                return false;
+            }
+            if (next % blockEntries == 0 || window == null) {
+                enterBlock(next / blockEntries);
+            }
+            int shared = readVarInt();
+            int suffix = readVarInt();
+            if (shared > pathLength || suffix < 0 || suffix > window.remaining() - algorithm.length() - 16) {
+                throw new IOException("Corrupted walk manifest entry " + next);
+            }
+            if (shared + suffix > path.length) {
+                path = Arrays.copyOf(path, Math.max(2 * path.length, shared + suffix));
+            }
+            window.get(path, shared, suffix);
+            pathLength = shared + suffix;
+            hashPosition = window.position();
+            window.position(hashPosition + algorithm.length());
+            size = window.getLong();
+            modified = window.getLong();
+            next++;
+            return true;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (!window.hasRemaining() || shift > 28) {
+                    throw new IOException("Corrupted walk manifest entry " + next);
+                }
+                byte b = window.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        public long index() {
+            return next - 1;
+        }
+
+        public String path() {
+            return new String(path, 0, pathLength, StandardCharsets.UTF_8);
+        }
+
+        public boolean samePath(Cursor other) {
+            return Arrays.equals(path, 0, pathLength, other.path, 0, other.pathLength);
+        }
+
+        /**
+         * Read-only slice of the mapped file, valid until the next call to {@link #next()}.
+         */
+        public ByteBuffer hash() {
+            return window.duplicate().position(hashPosition).limit(hashPosition + algorithm.length()).slice().asReadOnlyBuffer();
+        }
+
+        public boolean sameHash(Cursor other) {
+            return hash().equals(other.hash());
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long modified() {
+            return modified;
+        }
+    }
+
+    public static class Entry {
+        private final String path;
+        private final byte[] hash;
+        private final long size;
+        private final long modified;
+
+        Entry(String path, byte[] hash, long size, long modified) {
+            this.path = path;
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public byte[] getHash() {
+            return hash.clone();
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+    }
+}
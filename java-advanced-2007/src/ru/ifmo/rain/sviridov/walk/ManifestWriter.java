@@ -0,0 +1,103 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes the binary manifest read by {@link ManifestReader}.
+ * <pre>
+ * header:  int MAGIC, int VERSION, byte name length, algorithm name, int hash length
+ * block:   up to BLOCK_ENTRIES entries, paths prefix-compressed against the previous path of the block
+ * entry:   varint shared prefix, varint suffix length, suffix (UTF-8), hash, long size, long mtime
+ * index:   long offset of every block
+ * footer:  long entries, long index offset, int BLOCK_ENTRIES, int MAGIC
+ * </pre>
+ */
+class ManifestWriter implements WalkOutput {
+    static final int MAGIC = 0x574d4631;
+    static final int VERSION = 1;
+    static final int BLOCK_ENTRIES = 128;
+    static final int FOOTER_SIZE = 24;
+
+    private final DataOutputStream out;
+    private final HashAlgorithm algorithm;
+    private long[] blocks = new long[16];
+    private long entries;
+    private long position;
+    private byte[] previous = new byte[0];
+
+    ManifestWriter(Path path, HashAlgorithm algorithm) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        this.algorithm = algorithm;
+        byte[] name = algorithm.getName().getBytes(StandardCharsets.US_ASCII);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(name.length);
+        out.write(name);
+        out.writeInt(algorithm.length());
+        position = 13 + name.length;
+    }
+
+    @Override
+    public void write(WalkEntry entry) throws IOException {
+        int block = (int) (entries / BLOCK_ENTRIES);
+        if (entries % BLOCK_ENTRIES == 0) {
+            if (block == blocks.length) {
+                blocks = Arrays.copyOf(blocks, 2 * blocks.length);
+            }
+            blocks[block] = position;
+            previous = new byte[0];
+        }
+        byte[] path = entry.path().getBytes(StandardCharsets.UTF_8);
+        int shared = 0;
+        int limit = Math.min(path.length, previous.length);
+        while (shared < limit && path[shared] == previous[shared]) {
+            shared++;
+        }
+        position += writeVarInt(shared) + writeVarInt(path.length - shared);
+        out.write(path, shared, path.length - shared);
+        out.write(entry.digest(), 0, algorithm.length());
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+        position += path.length - shared + algorithm.length() + 16;
+        previous = path;
+        entries++;
+    }
+
+    private int writeVarInt(int value) throws IOException {
+        int written = 1;
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+            written++;
+        }
+        out.writeByte(value);
+        return written;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            int count = (int) ((entries + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(blocks[i]);
+            }
+            out.writeLong(entries);
+            out.writeLong(position);
+            out.writeInt(BLOCK_ENTRIES);
+            out.writeInt(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.TERMINATE;
+
+class ParallelWalk {
+    private static final int FILES_PER_TASK = 16;
+    private static final int ROOTS_PER_THREAD = 4;
+
+    private final RecursiveWalkTree recursiveWalkTree;
+    private final WalkStatistics walkStatistics;
+    private final int threads;
+    private final HashTask end = new HashTask(new Path[0], new BasicFileAttributes[0]);
+
+    ParallelWalk(RecursiveWalkTree recursiveWalkTree, WalkStatistics walkStatistics, int threads) {
+        this.recursiveWalkTree = recursiveWalkTree;
+        this.walkStatistics = walkStatistics;
+        this.threads = threads;
+    }
+
+    void run(BufferedReader bufferedReader, WalkOutput walkOutput) throws RecursiveWalkException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Queue<RootTask> pending = new ArrayDeque<>();
+        try {
+            String name;
+            while (true) {
+                try {
+                    if ((name = bufferedReader.readLine()) == null) break;
+                } catch (IOException e) {
+                    throw new RecursiveWalkException("Can't read from input-file: " + e.getMessage());
+                }
+                RootTask root = new RootTask(name);
+                pool.execute(root);
+                pending.add(root);
+                if (pending.size() >= threads * ROOTS_PER_THREAD) {
+                    write(walkOutput, pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(walkOutput, pending.poll());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecursiveWalkException("Walk was interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the entries of {@code root} batch by batch as they are hashed. Like the sequential walk,
+     * an output error is reported and ends only this root.
+     */
+    private void write(WalkOutput walkOutput, RootTask root) throws InterruptedException {
+        try {
+            for (WalkEntry[] entries = root.next(); entries != null; entries = root.next()) {
+                for (WalkEntry entry : entries) {
+                    walkOutput.write(entry);
+                }
+            }
+        } catch (IOException e) {
+            root.stop();
+            walkStatistics.error(WalkStatistics.ErrorKind.OUTPUT, "Error writing to output-file: " + e.getMessage());
+        }
+    }
+
+    private class RootTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final BlockingQueue<HashTask> batches = new LinkedBlockingQueue<>();
+        private volatile WalkEntry failure;
+        private volatile boolean stopped;
+        private boolean ended;
+
+        RootTask(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Forks a hash task for every {@code FILES_PER_TASK} files as soon as they are visited,
+         * so hashing of a large root overlaps with its traversal and with writing its first entries.
+         */
+        @Override
+        protected void compute() {
+            List<Path> files = new ArrayList<>();
+            List<BasicFileAttributes> attributes = new ArrayList<>();
+            try {
+                Files.walkFileTree(Paths.get(name), new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (stopped) {
+                            return TERMINATE;
+                        }
+                        files.add(file);
+                        attributes.add(attrs);
+                        if (files.size() == FILES_PER_TASK) {
+                            fork(files, attributes);
+                        }
+                        return CONTINUE;
+                    }
+                });
+                fork(files, attributes);
+            } catch (InvalidPathException | IOException e) {
+                fork(files, attributes);
+                failure = recursiveWalkTree.failedEntry(name, e);
+            } finally {
+                batches.add(end);
+            }
+        }
+
+        private void fork(List<Path> files, List<BasicFileAttributes> attributes) {
+            if (!files.isEmpty()) {
+                HashTask task = new HashTask(files.toArray(new Path[0]), attributes.toArray(new BasicFileAttributes[0]));
+                task.fork();
+                batches.add(task);
+                files.clear();
+                attributes.clear();
+            }
+        }
+
+        /**
+         * Next batch of entries in traversal order, waiting for it to be hashed, or {@code null} after the last one.
+         */
+        WalkEntry[] next() throws InterruptedException {
+            if (ended) {
+                return null;
+            }
+            HashTask task = batches.take();
+            if (task == end) {
+                ended = true;
+                return failure == null ? null : new WalkEntry[]{failure};
+            }
+            return task.join();
+        }
+
+        void stop() {
+            stopped = true;
+        }
+    }
+
+    private class HashTask extends RecursiveTask<WalkEntry[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path[] files;
+        private final BasicFileAttributes[] attributes;
+
+        HashTask(Path[] files, BasicFileAttributes[] attributes) {
+            this.files = files;
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected WalkEntry[] compute() {
+            WalkEntry[] entries = new WalkEntry[files.length];
+            for (int i = 0; i < files.length; i++) {
+                entries[i] = recursiveWalkTree.entry(files[i], attributes[i]);
+            }
+            return entries;
+        }
+    }
+}
@@ -7,17 +7,86 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class RecursiveWalk {
-    private static final String USAGE = "java Walk <input-file> <output-file>";
+    private static final long SHUTDOWN_MILLIS = 5000;
+    private static final String USAGE = "java Walk [-j <threads>] [-i <index-file>] [-a <algorithm>] [-d | -m] [-w] [-p <seconds>] <input-file> <output-file>";
+
+    private final int threads;
+    private final Path index;
+    private final HashAlgorithm algorithm;
+    private final boolean duplicates;
+    private final boolean manifest;
+    private final int progress;
+    private final boolean watch;
+
+    private RecursiveWalk(int threads, Path index, HashAlgorithm algorithm, boolean duplicates, boolean manifest, int progress, boolean watch) {
+        this.threads = threads;
+        this.index = index;
+        this.algorithm = algorithm;
+        this.duplicates = duplicates;
+        this.manifest = manifest;
+        this.progress = progress;
+        this.watch = watch;
+    }
 
     public static void main(String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            if (args == null || args.length != 2) {
+        int threads = 0;
+        Path index = null;
+        HashAlgorithm algorithm = HashAlgorithm.FNV1_32;
+        boolean duplicates = false;
+        boolean manifest = false;
+        int progress = 0;
+        boolean watch = false;
+        int first = 0;
+        try {
+            while (args != null && first < args.length && args[first] != null && args[first].startsWith("-")) {
+                switch (args[first]) {
+                    case "-j":
+                        threads = intOption(args, ++first, "-j");
+                        break;
+                    case "-i":
+                        index = makePath(stringOption(args, ++first, "-i"), "Incorrect index-file's path");
+                        break;
+                    case "-a":
+                        algorithm = algorithmOption(args, ++first, "-a");
+                        break;
+                    case "-d":
+                        duplicates = true;
+                        break;
+                    case "-m":
+                        manifest = true;
+                        break;
+                    case "-p":
+                        progress = intOption(args, ++first, "-p");
+                        break;
+                    case "-w":
+                        watch = true;
+                        break;
+                    default:
+                        throw new RecursiveWalkException("Unknown option " + args[first]);
+                }
+                first++;
+            }
+            if (duplicates && manifest) {
+                throw new RecursiveWalkException("Duplicate groups can't be written as a manifest");
+            }
+            if (duplicates && watch) {
+                throw new RecursiveWalkException("Duplicate groups can't be watched");
+            }
+        } catch (RecursiveWalkException e) {
+            System.err.println(e.getMessage());
+            System.err.println("USAGE " + USAGE);
+            System.exit(1);
+        }
+        if (args == null || args.length - first != 2 || args[first] == null || args[first + 1] == null) {
+            if (args == null || args.length - first != 2) {
                 System.err.println("Incorrect number of args");
-            } else if (args[0] == null) {
+            } else if (args[first] == null) {
                 System.err.println("input-file must be non-null");
-            } else if (args[1] == null) {
+            } else if (args[first + 1] == null) {
                 System.err.println("output-file must be non-null");
             }
             System.err.println("USAGE " + USAGE);
@@ -25,15 +94,43 @@ public class RecursiveWalk {
         }
         Path input = null, output = null;
         try {
-            input = makePath(args[0], "Incorrect input-file's path");
-            output = makePath(args[1], "Incorrect output-file's path");
-            new RecursiveWalk().run(input, output);
+            input = makePath(args[first], "Incorrect input-file's path");
+            output = makePath(args[first + 1], "Incorrect output-file's path");
+            new RecursiveWalk(threads, index, algorithm, duplicates, manifest, progress, watch).run(input, output);
         } catch (RecursiveWalkException e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
     }
 
+    private static String stringOption(String[] args, int i, String option) throws RecursiveWalkException {
+        if (i >= args.length || args[i] == null) {
+            throw new RecursiveWalkException("Option " + option + " requires a value");
+        }
+        return args[i];
+    }
+
+    private static HashAlgorithm algorithmOption(String[] args, int i, String option) throws RecursiveWalkException {
+        try {
+            return HashAlgorithm.forName(stringOption(args, i, option));
+        } catch (IllegalArgumentException e) {
+            throw new RecursiveWalkException(e.getMessage());
+        }
+    }
+
+    private static int intOption(String[] args, int i, String option) throws RecursiveWalkException {
+        String arg = stringOption(args, i, option);
+        try {
+            int value = Integer.parseInt(arg);
+            if (value <= 0) {
+                throw new RecursiveWalkException("Option " + option + " must be positive");
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new RecursiveWalkException("Option " + option + " expects a number: " + arg);
+        }
+    }
+
     private static Path makePath(String path, String msg) throws RecursiveWalkException {
         try {
             return Paths.get(path);
@@ -43,30 +140,96 @@ public class RecursiveWalk {
     }
 
     private void run(Path input, Path output) throws RecursiveWalkException {
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread hook = watch ? stopOnShutdown(Thread.currentThread(), finished) : null;
+        try {
+            process(input, output);
+        } finally {
+            finished.countDown();
+            if (hook != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(hook);
+                } catch (IllegalStateException e) {
+                    // the hook is already running and waits for us
+                }
+            }
+        }
+    }
+
+    /**
+     * A watch only ends when the process is stopped. The hook interrupts {@code runner} and gives it
+     * {@code SHUTDOWN_MILLIS} to write the pending manifest and close the index.
+     */
+    private static Thread stopOnShutdown(Thread runner, CountDownLatch finished) {
+        Thread hook = new Thread(() -> {
+            runner.interrupt();
+            try {
+                finished.await(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignored) {
+                // exit anyway
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private void process(Path input, Path output) throws RecursiveWalkException {
         try (BufferedReader bufferedReader = Files.newBufferedReader(input, Charset.forName("UTF-8"))) {
-            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(output, Charset.forName("UTF-8"))) {
-                RecursiveWalkTree recursiveWalkTree = new RecursiveWalkTree(bufferedWriter);
-
-                String name;
-                while (true) {
-                    try {
-                        if ((name = bufferedReader.readLine()) == null) break;
-                        try {
-                            Files.walkFileTree(Paths.get(name), recursiveWalkTree);
-                        } catch (InvalidPathException | IOException e) {
-                            System.err.println("Error while hashing a file: " +     e.getMessage());
-                            bufferedWriter.write(String.format("%x", 0) + " " + name + "\n");
+            HashingEngine hashingEngine = new HashingEngine(algorithm);
+            WalkStatistics walkStatistics = new WalkStatistics(hashingEngine);
+            walkStatistics.start(progress);
+            try (walkStatistics; HashIndex hashIndex = index == null ? null : openIndex(index, algorithm)) {
+                if (duplicates) {
+                    try (BufferedWriter bufferedWriter = Files.newBufferedWriter(output, Charset.forName("UTF-8"))) {
+                        new DuplicateFinder(hashingEngine, hashIndex, walkStatistics, threads).run(bufferedReader, bufferedWriter);
+                    }
+                } else if (watch) {
+                    new WatchWalk(hashingEngine, hashIndex, walkStatistics, output, manifest).run(bufferedReader);
+                } else {
+                    try (WalkOutput walkOutput = openOutput(output)) {
+                        RecursiveWalkTree recursiveWalkTree = new RecursiveWalkTree(walkOutput, hashingEngine, hashIndex, walkStatistics);
+                        if (threads > 0) {
+                            new ParallelWalk(recursiveWalkTree, walkStatistics, threads).run(bufferedReader, walkOutput);
+                        } else {
+                            walk(bufferedReader, walkOutput, recursiveWalkTree);
                         }
-                    } catch (IOException e) {
-                        throw new RecursiveWalkException("Can't read from input-file: " + e.getMessage());
                     }
                 }
-
-            } catch (IOException e) {
-                throw new RecursiveWalkException(e.getMessage());
             }
+            System.err.println(walkStatistics.summary());
         } catch (IOException e) {
             throw new RecursiveWalkException(e.getMessage());
         }
     }
+
+    private WalkOutput openOutput(Path output) throws IOException {
+        if (manifest) {
+            return new ManifestWriter(output, algorithm);
+        }
+        return new TextOutput(Files.newBufferedWriter(output, Charset.forName("UTF-8")), algorithm);
+    }
+
+    private static HashIndex openIndex(Path index, HashAlgorithm algorithm) throws RecursiveWalkException {
+        try {
+            return HashIndex.open(index, algorithm);
+        } catch (IOException e) {
+            throw new RecursiveWalkException("Can't open index-file: " + e.getMessage());
+        }
+    }
+
+    private void walk(BufferedReader bufferedReader, WalkOutput walkOutput, RecursiveWalkTree recursiveWalkTree) throws RecursiveWalkException {
+        String name;
+        while (true) {
+            try {
+                if ((name = bufferedReader.readLine()) == null) break;
+                try {
+                    Files.walkFileTree(Paths.get(name), recursiveWalkTree);
+                } catch (InvalidPathException | IOException e) {
+                    walkOutput.write(recursiveWalkTree.failedEntry(name, e));
+                }
+            } catch (IOException e) {
+                throw new RecursiveWalkException("Can't read from input-file: " + e.getMessage());
+            }
+        }
+    }
 }
@@ -1,7 +1,7 @@
 package ru.ifmo.rain.sviridov.walk;
 
 import java.io.*;
-import java.nio.charset.Charset;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 
@@ -9,45 +9,71 @@ import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.FileVisitResult.TERMINATE;
 
 public class RecursiveWalkTree extends SimpleFileVisitor<Path> {
-    private final BufferedWriter bufferedWriter;
-    private final int FNV_32_PRIME = 0x01000193;
+    private final WalkOutput walkOutput;
+    private final HashingEngine hashingEngine;
+    private final HashIndex hashIndex;
+    private final WalkStatistics walkStatistics;
 
-    RecursiveWalkTree(BufferedWriter e) {
-        bufferedWriter = e;
+    RecursiveWalkTree(WalkOutput e, HashingEngine hashingEngine, HashIndex hashIndex, WalkStatistics walkStatistics) {
+        walkOutput = e;
+        this.hashingEngine = hashingEngine;
+        this.hashIndex = hashIndex;
+        this.walkStatistics = walkStatistics;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attr) {
-        int result = 0x0;
-        try (InputStream inputStream = Files.newInputStream(file)) {
-            try {
-                result = FVN1Hash(inputStream);
-            } catch (IOException e) {
-                System.err.println("Error while hashing a file " + file.toString() + " : " + e.getMessage());
-                result = 0;
-            }
-        } catch (IOException | InvalidPathException e) {
-            System.err.println("Can't access file " + file.toString() + ": " + e.getMessage());
-            result = 0;
-        }
         try {
-            bufferedWriter.write(result + " " + file.toString() + "\n");
+            walkOutput.write(entry(file, attr));
         } catch (IOException e) {
-            System.err.println("Error writing to output-file: " + e.getMessage());
+            walkStatistics.error(WalkStatistics.ErrorKind.OUTPUT, "Error writing to output-file: " + e.getMessage());
             return TERMINATE;
         }
         return CONTINUE;
     }
 
+    WalkEntry entry(Path file, BasicFileAttributes attr) {
+        HashAlgorithm algorithm = hashingEngine.algorithm();
+        byte[] known = hashIndex == null ? null : hashIndex.lookup(file, attr);
+        if (known != null) {
+            walkStatistics.skipped();
+            return entry(file, attr, known);
+        }
+        byte[] result;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            try {
+                long start = System.nanoTime();
+                result = hashingEngine.hash(channel);
+                walkStatistics.hashed(file, System.nanoTime() - start);
+                remember(file, attr, result);
+            } catch (IOException e) {
+                walkStatistics.error(WalkStatistics.ErrorKind.READ, "Error while hashing a file " + file.toString() + " : " + e.getMessage());
+                result = algorithm.zero();
+            }
+        } catch (IOException | InvalidPathException e) {
+            walkStatistics.error(WalkStatistics.ErrorKind.ACCESS, "Can't access file " + file.toString() + ": " + e.getMessage());
+            result = algorithm.zero();
+        }
+        return entry(file, attr, result);
+    }
 
-    int FVN1Hash(InputStream inputStream) throws IOException {
-        int hval = 0x811c9dc5;
-        int c = 0;
-            while ((c = inputStream.read()) != -1) {
-                hval *= FNV_32_PRIME;
-                hval ^= c;
+    private static WalkEntry entry(Path file, BasicFileAttributes attr, byte[] digest) {
+        return new WalkEntry(file.toString(), digest, attr.size(), attr.lastModifiedTime().toMillis());
+    }
+
+    WalkEntry failedEntry(String name, Exception e) {
+        walkStatistics.error(WalkStatistics.ErrorKind.WALK, "Error while hashing a file: " + e.getMessage());
+        return new WalkEntry(name, hashingEngine.algorithm().zero(), 0, 0);
+    }
+
+    private void remember(Path file, BasicFileAttributes attr, byte[] result) {
+        if (hashIndex != null) {
+            try {
+                hashIndex.store(file, attr, result);
+            } catch (IOException e) {
+                walkStatistics.error(WalkStatistics.ErrorKind.INDEX, "Error writing to index-file: " + e.getMessage());
             }
-        return hval;
+        }
     }
 
 }
@@ -0,0 +1,32 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+class Sha256Hash implements HashFunction {
+    private final MessageDigest messageDigest;
+
+    Sha256Hash() {
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        messageDigest.update(bytes, offset, length);
+    }
+
+    @Override
+    public void update(ByteBuffer bytes) {
+        messageDigest.update(bytes);
+    }
+
+    @Override
+    public byte[] digest() {
+        return messageDigest.digest();
+    }
+}
@@ -0,0 +1,39 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+class TextOutput implements WalkOutput {
+    /**
+     * Written in place of the hash for a file that was removed while watching. It is not a valid hash of
+     * any algorithm, so it can't be mistaken for the zero hash written for a file that couldn't be read.
+     */
+    static final String DELETED = "deleted";
+
+    private final BufferedWriter bufferedWriter;
+    private final HashAlgorithm algorithm;
+
+    TextOutput(BufferedWriter bufferedWriter, HashAlgorithm algorithm) {
+        this.bufferedWriter = bufferedWriter;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public void write(WalkEntry entry) throws IOException {
+        bufferedWriter.write(algorithm.format(entry.digest()) + " " + entry.path() + "\n");
+    }
+
+    void writeDeleted(String path) throws IOException {
+        bufferedWriter.write(DELETED + " " + path + "\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        bufferedWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        bufferedWriter.close();
+    }
+}
@@ -0,0 +1,31 @@
+package ru.ifmo.rain.sviridov.walk;
+
+class WalkEntry {
+    private final String path;
+    private final byte[] digest;
+    private final long size;
+    private final long modified;
+
+    WalkEntry(String path, byte[] digest, long size, long modified) {
+        this.path = path;
+        this.digest = digest;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    String path() {
+        return path;
+    }
+
+    byte[] digest() {
+        return digest;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long modified() {
+        return modified;
+    }
+}
@@ -0,0 +1,9 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+interface WalkOutput extends Closeable, Flushable {
+    void write(WalkEntry entry) throws IOException;
+}
@@ -0,0 +1,181 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+class WalkStatistics implements WalkStatisticsMXBean, AutoCloseable {
+    private static final int SLOWEST = 10;
+    private static final String OBJECT_NAME = "ru.ifmo.rain.sviridov.walk:type=WalkStatistics";
+
+    enum ErrorKind {
+        WALK, ACCESS, READ, INDEX, OUTPUT
+    }
+
+    private final HashingEngine hashingEngine;
+    private final LongAdder files = new LongAdder();
+    private final LongAdder[] errors = new LongAdder[ErrorKind.values().length];
+    private final PriorityQueue<Slow> slowest = new PriorityQueue<>(Comparator.comparingLong(slow -> slow.nanos));
+    private volatile long slowThreshold;
+
+    private ScheduledExecutorService reporter;
+    private ObjectName objectName;
+    private long lastTick = System.nanoTime();
+    private long lastFiles;
+    private long lastBytes;
+    private volatile double filesPerSecond;
+    private volatile double bytesPerSecond;
+
+    WalkStatistics(HashingEngine hashingEngine) {
+        this.hashingEngine = hashingEngine;
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = new LongAdder();
+        }
+    }
+
+    void hashed(Path file, long nanos) {
+        files.increment();
+        if (nanos > slowThreshold) {
+            synchronized (slowest) {
+                slowest.add(new Slow(file, nanos));
+                if (slowest.size() > SLOWEST) {
+                    slowest.poll();
+                }
+                if (slowest.size() == SLOWEST) {
+                    slowThreshold = slowest.peek().nanos;
+                }
+            }
+        }
+    }
+
+    void skipped() {
+        files.increment();
+    }
+
+    void error(ErrorKind kind, String message) {
+        errors[kind.ordinal()].increment();
+        System.err.println(message);
+    }
+
+    void start(int progressSeconds) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException e) {
+            System.err.println("Can't register walk statistics: " + e.getMessage());
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "walk-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+        if (progressSeconds > 0) {
+            reporter.scheduleAtFixedRate(() -> System.err.println(progress()), progressSeconds, progressSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void tick() {
+        long now = System.nanoTime();
+        long currentFiles = files.sum();
+        long currentBytes = hashingEngine.bytes();
+        double elapsed = (now - lastTick) / 1e9;
+        if (elapsed > 0) {
+            filesPerSecond = (currentFiles - lastFiles) / elapsed;
+            bytesPerSecond = (currentBytes - lastBytes) / elapsed;
+        }
+        lastTick = now;
+        lastFiles = currentFiles;
+        lastBytes = currentBytes;
+    }
+
+    String progress() {
+        return String.format("files: %d (%.0f/s), bytes: %.1f MB (%.1f MB/s), errors: %d",
+                getFiles(), filesPerSecond, getBytes() / (double) (1 << 20), getMegabytesPerSecond(), getErrors());
+    }
+
+    String summary() {
+        return String.format("Hashed %d files, %d bytes at %.1f MB/s, errors: %d",
+                getFiles(), getBytes(), hashingEngine.bytesPerSecond() / (1 << 20), getErrors());
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return hashingEngine.bytes();
+    }
+
+    @Override
+    public long getErrors() {
+        return Arrays.stream(errors).mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByKind() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (ErrorKind kind : ErrorKind.values()) {
+            result.put(kind.name(), errors[kind.ordinal()].sum());
+        }
+        return result;
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return filesPerSecond;
+    }
+
+    @Override
+    public double getMegabytesPerSecond() {
+        return bytesPerSecond / (1 << 20);
+    }
+
+    @Override
+    public List<String> getSlowestFiles() {
+        synchronized (slowest) {
+            return slowest.stream()
+                    .sorted(Comparator.comparingLong((Slow slow) -> slow.nanos).reversed())
+                    .map(slow -> String.format("%.1f ms %s", slow.nanos / 1e6, slow.file))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Can't unregister walk statistics: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Slow {
+        private final Path file;
+        private final long nanos;
+
+        Slow(Path file, long nanos) {
+            this.file = file;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.util.List;
+import java.util.Map;
+
+public interface WalkStatisticsMXBean {
+    long getFiles();
+
+    long getBytes();
+
+    long getErrors();
+
+    Map<String, Long> getErrorsByKind();
+
+    double getFilesPerSecond();
+
+    double getMegabytesPerSecond();
+
+    List<String> getSlowestFiles();
+}
@@ -0,0 +1,302 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+class WatchWalk {
+    private static final long DEBOUNCE_MILLIS = 200;
+    private static final long MAX_BATCH_MILLIS = 1000;
+    private static final int MAX_BATCH_CHANGES = 10_000;
+    private static final long MANIFEST_MILLIS = 2000;
+
+    private final HashingEngine hashingEngine;
+    private final HashIndex hashIndex;
+    private final WalkStatistics walkStatistics;
+    private final Path output;
+    private final boolean manifest;
+
+    private final NavigableMap<String, WalkEntry> state = new TreeMap<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Set<Path> registered = new HashSet<>();
+    private final Set<Path> fullDirectories = new HashSet<>();
+    private final Map<Path, Path> fileRoots = new HashMap<>();
+    private WatchService watchService;
+    private RecursiveWalkTree recursiveWalkTree;
+    private TextOutput textOutput;
+    private boolean dirty;
+    private long written;
+
+    WatchWalk(HashingEngine hashingEngine, HashIndex hashIndex, WalkStatistics walkStatistics, Path output, boolean manifest) {
+        this.hashingEngine = hashingEngine;
+        this.hashIndex = hashIndex;
+        this.walkStatistics = walkStatistics;
+        this.output = output;
+        this.manifest = manifest;
+    }
+
+    void run(BufferedReader bufferedReader) throws RecursiveWalkException {
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            watchService = service;
+            textOutput = manifest ? null : new TextOutput(Files.newBufferedWriter(output, Charset.forName("UTF-8")), hashingEngine.algorithm());
+            recursiveWalkTree = new RecursiveWalkTree(textOutput, hashingEngine, hashIndex, walkStatistics);
+            try {
+                List<WalkEntry> updates = new ArrayList<>();
+                String name;
+                while (true) {
+                    try {
+                        if ((name = bufferedReader.readLine()) == null) break;
+                    } catch (IOException e) {
+                        throw new RecursiveWalkException("Can't read from input-file: " + e.getMessage());
+                    }
+                    try {
+                        Path root = Paths.get(name);
+                        if (Files.isDirectory(root)) {
+                            scan(root, updates);
+                        } else {
+                            fileRoots.put(root.toAbsolutePath(), root);
+                            register(root.toAbsolutePath().getParent(), false);
+                            walkRoot(root, updates);
+                        }
+                    } catch (InvalidPathException | IOException e) {
+                        updates.add(recursiveWalkTree.failedEntry(name, e));
+                    }
+                }
+                emit(updates, Collections.emptyList());
+                if (manifest) {
+                    writeManifest();
+                }
+                watch();
+            } finally {
+                if (textOutput != null) {
+                    textOutput.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RecursiveWalkException("Error while watching: " + e.getMessage());
+        }
+    }
+
+    private void walkRoot(Path root, List<WalkEntry> updates) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                updates.add(recursiveWalkTree.entry(file, attrs));
+                return CONTINUE;
+            }
+        });
+    }
+
+    private void scan(Path directory, List<WalkEntry> updates) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir, true);
+                return CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                updates.add(recursiveWalkTree.entry(file, attrs));
+                return CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path directory, boolean full) throws IOException {
+        if (registered.add(directory)) {
+            directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+        }
+        if (full) {
+            fullDirectories.add(directory);
+        }
+    }
+
+    private boolean watched(Path directory, Path child) {
+        return fullDirectories.contains(directory) || fileRoots.containsKey(child);
+    }
+
+    /**
+     * Watches until every directory is gone or the thread is interrupted. Either way the pending manifest
+     * is written and the index flushed before returning.
+     */
+    private void watch() throws InterruptedException, IOException {
+        try {
+            while (!directories.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new LinkedHashSet<>();
+                Set<Path> rescans = new LinkedHashSet<>();
+                WatchKey key = dirty ? watchService.poll(manifestDelay(), TimeUnit.MILLISECONDS) : watchService.take();
+                if (key == null) {
+                    writeManifest();
+                    continue;
+                }
+                debounce(key, changed, rescans);
+
+                List<WalkEntry> updates = new ArrayList<>();
+                List<String> deleted = new ArrayList<>();
+                for (Path directory : rescans) {
+                    Set<String> before = forget(directory);
+                    try {
+                        scan(directory, updates);
+                    } catch (IOException e) {
+                        walkStatistics.error(WalkStatistics.ErrorKind.WALK, "Error while rescanning " + directory + ": " + e.getMessage());
+                    }
+                    updates.forEach(entry -> before.remove(entry.path()));
+                    deleted.addAll(before);
+                }
+                for (Path file : changed) {
+                    if (rescans.stream().noneMatch(file::startsWith)) {
+                        update(file, updates, deleted);
+                    }
+                }
+                emit(updates, deleted);
+                if (dirty && manifestDelay() == 0) {
+                    writeManifest();
+                }
+            }
+        } finally {
+            boolean interrupted = Thread.interrupted();
+            try {
+                if (dirty) {
+                    writeManifest();
+                }
+                if (hashIndex != null) {
+                    hashIndex.flush();
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects events until none arrive for {@code DEBOUNCE_MILLIS}. A batch is cut after
+     * {@code MAX_BATCH_MILLIS} or {@code MAX_BATCH_CHANGES} paths, so a file that never stops
+     * changing can't hold back every other update.
+     */
+    private void debounce(WatchKey key, Set<Path> changed, Set<Path> rescans) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_MILLIS);
+        while (key != null) {
+            collect(key, changed, rescans);
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0 || changed.size() + rescans.size() >= MAX_BATCH_CHANGES) {
+                break;
+            }
+            key = watchService.poll(Math.min(DEBOUNCE_MILLIS, left), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes the entry of {@code prefix} and the entries under it. Paths starting with a given string
+     * form one range of the sorted state, so only the removed entries are visited.
+     */
+    private Set<String> forget(Path prefix) {
+        String path = prefix.toString();
+        String separator = prefix.getFileSystem().getSeparator();
+        String children = path.endsWith(separator) ? path : path + separator;
+        Set<String> removed = new LinkedHashSet<>();
+        if (state.remove(path) != null) {
+            removed.add(path);
+        }
+        SortedMap<String, WalkEntry> range = state.subMap(children, children + Character.MAX_VALUE);
+        removed.addAll(range.keySet());
+        range.clear();
+        return removed;
+    }
+
+    private void collect(WatchKey key, Set<Path> changed, Set<Path> rescans) {
+        Path directory = directories.get(key);
+        if (directory == null) {
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                if (fullDirectories.contains(directory)) {
+                    rescans.add(directory);
+                } else {
+                    fileRoots.keySet().stream().filter(root -> directory.equals(root.getParent())).forEach(changed::add);
+                }
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            if (!watched(directory, child)) {
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && fullDirectories.contains(directory) && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                rescans.add(child);
+            } else {
+                changed.add(child);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+            registered.remove(directory);
+            fullDirectories.remove(directory);
+        }
+    }
+
+    private void update(Path child, List<WalkEntry> updates, List<String> deleted) {
+        Path file = fileRoots.getOrDefault(child, child);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attrs.isRegularFile()) {
+                updates.add(recursiveWalkTree.entry(file, attrs));
+            }
+        } catch (NoSuchFileException e) {
+            deleted.addAll(forget(file));
+        } catch (IOException e) {
+            walkStatistics.error(WalkStatistics.ErrorKind.ACCESS, "Can't access file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void emit(List<WalkEntry> updates, List<String> deleted) throws IOException {
+        for (WalkEntry entry : updates) {
+            state.put(entry.path(), entry);
+        }
+        if (manifest) {
+            dirty |= !updates.isEmpty() || !deleted.isEmpty();
+        } else {
+            for (WalkEntry entry : updates) {
+                textOutput.write(entry);
+            }
+            for (String path : deleted) {
+                textOutput.writeDeleted(path);
+            }
+            textOutput.flush();
+        }
+        if (hashIndex != null) {
+            hashIndex.flush();
+        }
+    }
+
+    /**
+     * Milliseconds until the manifest may be rewritten again. Rewrites cost a pass over the whole state,
+     * so they happen at most once per {@code MANIFEST_MILLIS} and changes in between are batched.
+     */
+    private long manifestDelay() {
+        return Math.max(0, MANIFEST_MILLIS - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - written));
+    }
+
+    private void writeManifest() throws IOException {
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (ManifestWriter manifestWriter = new ManifestWriter(temp, hashingEngine.algorithm())) {
+            for (WalkEntry entry : state.values()) {
+                manifestWriter.write(entry);
+            }
+        }
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        written = System.nanoTime();
+        dirty = false;
+    }
+}
@@ -0,0 +1,143 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+class XxHash64 implements HashFunction {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] stripe = new byte[STRIPE];
+    private int buffered;
+    private long total;
+    private long v1, v2, v3, v4;
+
+    XxHash64() {
+        reset();
+    }
+
+    private void reset() {
+        v1 = PRIME_1 + PRIME_2;
+        v2 = PRIME_2;
+        v3 = 0;
+        v4 = -PRIME_1;
+        total = 0;
+        buffered = 0;
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long merge(long acc, long value) {
+        return (acc ^ round(0, value)) * PRIME_1 + PRIME_4;
+    }
+
+    private void consume(byte[] bytes, int offset) {
+        v1 = round(v1, (long) LONGS.get(bytes, offset));
+        v2 = round(v2, (long) LONGS.get(bytes, offset + 8));
+        v3 = round(v3, (long) LONGS.get(bytes, offset + 16));
+        v4 = round(v4, (long) LONGS.get(bytes, offset + 24));
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        total += length;
+        if (buffered + length < STRIPE) {
+            System.arraycopy(bytes, offset, stripe, buffered, length);
+            buffered += length;
+            return;
+        }
+        if (buffered > 0) {
+            int fill = STRIPE - buffered;
+            System.arraycopy(bytes, offset, stripe, buffered, fill);
+            consume(stripe, 0);
+            offset += fill;
+            length -= fill;
+            buffered = 0;
+        }
+        for (; length >= STRIPE; offset += STRIPE, length -= STRIPE) {
+            consume(bytes, offset);
+        }
+        System.arraycopy(bytes, offset, stripe, 0, length);
+        buffered = length;
+    }
+
+    private void consume(ByteBuffer bytes, int offset) {
+        v1 = round(v1, (long) BUFFER_LONGS.get(bytes, offset));
+        v2 = round(v2, (long) BUFFER_LONGS.get(bytes, offset + 8));
+        v3 = round(v3, (long) BUFFER_LONGS.get(bytes, offset + 16));
+        v4 = round(v4, (long) BUFFER_LONGS.get(bytes, offset + 24));
+    }
+
+    @Override
+    public void update(ByteBuffer bytes) {
+        int offset = bytes.position();
+        int length = bytes.remaining();
+        bytes.position(bytes.limit());
+        total += length;
+        if (buffered + length < STRIPE) {
+            bytes.get(offset, stripe, buffered, length);
+            buffered += length;
+            return;
+        }
+        if (buffered > 0) {
+            int fill = STRIPE - buffered;
+            bytes.get(offset, stripe, buffered, fill);
+            consume(stripe, 0);
+            offset += fill;
+            length -= fill;
+            buffered = 0;
+        }
+        for (; length >= STRIPE; offset += STRIPE, length -= STRIPE) {
+            consume(bytes, offset);
+        }
+        bytes.get(offset, stripe, 0, length);
+        buffered = length;
+    }
+
+    @Override
+    public byte[] digest() {
+        long h;
+        if (total >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = PRIME_5;
+        }
+        h += total;
+        int i = 0;
+        for (; i + 8 <= buffered; i += 8) {
+            h ^= round(0, (long) LONGS.get(stripe, i));
+            h = Long.rotateLeft(h, 27) * PRIME_1 + PRIME_4;
+        }
+        if (i + 4 <= buffered) {
+            h ^= ((int) INTS.get(stripe, i) & 0xffffffffL) * PRIME_1;
+            h = Long.rotateLeft(h, 23) * PRIME_2 + PRIME_3;
+            i += 4;
+        }
+        for (; i < buffered; i++) {
+            h ^= (stripe[i] & 0xff) * PRIME_5;
+            h = Long.rotateLeft(h, 11) * PRIME_1;
+        }
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        h ^= h >>> 32;
+        reset();
+        return HashAlgorithm.toBytes(h);
+    }
+}
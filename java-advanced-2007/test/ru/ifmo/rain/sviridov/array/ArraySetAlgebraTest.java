@@ -0,0 +1,46 @@
+package ru.ifmo.rain.sviridov.array;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ArraySetAlgebraTest {
+    private static final Comparator<Integer> BY_DIGITS = Comparator.comparing(Integer::reverse);
+
+    private final Random random = new Random(5);
+
+    private List<Integer> values(int count, int bound) {
+        return random.ints(count, -bound, bound).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void setAlgebra() {
+        for (Comparator<Integer> comparator : Arrays.asList(null, BY_DIGITS)) {
+            for (int[] sizes : new int[][]{{0, 10}, {10, 0}, {100, 100}, {1000, 10}, {10, 1000}}) {
+                List<Integer> first = values(sizes[0], 2000);
+                List<Integer> second = values(sizes[1], 2000);
+                ArraySet<Integer> set = new ArraySet<>(first, comparator);
+                for (Collection<Integer> other : Arrays.asList(new ArraySet<>(second, comparator),
+                        new ArraySet<>(second, comparator == null ? BY_DIGITS : null), new HashSet<>(second), second)) {
+                    TreeSet<Integer> union = SetAssert.treeSet(first, comparator);
+                    union.addAll(second);
+                    assertEquals(new ArrayList<>(union), new ArrayList<>(set.union(other)));
+
+                    TreeSet<Integer> intersection = SetAssert.treeSet(first, comparator);
+                    intersection.retainAll(new HashSet<>(second));
+                    assertEquals(new ArrayList<>(intersection), new ArrayList<>(set.intersection(other)));
+
+                    TreeSet<Integer> difference = SetAssert.treeSet(first, comparator);
+                    difference.removeAll(new HashSet<>(second));
+                    assertEquals(new ArrayList<>(difference), new ArrayList<>(set.difference(other)));
+
+                    assertEquals(new HashSet<>(first).containsAll(second), set.containsAll(other));
+                    assertTrue(set.containsAll(set.intersection(other)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.ifmo.rain.sviridov.array;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class ArraySetQueryTest {
+    private static final Comparator<Integer> BY_DIGITS = Comparator.comparing(Integer::reverse);
+
+    private final Random random = new Random(6);
+
+    private List<Integer> values(int count, int bound) {
+        return random.ints(count, -bound, bound).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Integer> queries(int bound, Comparator<Integer> comparator) {
+        List<Integer> queries = IntStream.rangeClosed(-bound - 2, bound + 2).boxed().collect(Collectors.toList());
+        queries.sort(comparator == null ? Comparator.naturalOrder() : comparator);
+        return queries;
+    }
+
+    @Test
+    public void cursor() {
+        for (Comparator<Integer> comparator : Arrays.asList(null, BY_DIGITS)) {
+            List<Integer> values = values(500, 300);
+            TreeSet<Integer> expected = SetAssert.treeSet(values, comparator);
+            ArraySet<Integer> set = new ArraySet<>(values, comparator);
+            List<Integer> queries = queries(300, comparator);
+            List<Integer> shuffled = new ArrayList<>(queries);
+            Collections.shuffle(shuffled, random);
+            for (List<Integer> order : Arrays.asList(queries, shuffled)) {
+                ArraySet<Integer>.Cursor cursor = set.cursor();
+                for (Integer query : order) {
+                    assertEquals(expected.contains(query), cursor.contains(query));
+                    assertEquals(expected.floor(query), cursor.floor(query));
+                    assertEquals(expected.ceiling(query), cursor.ceiling(query));
+                    assertEquals(expected.lower(query), cursor.lower(query));
+                    assertEquals(expected.higher(query), cursor.higher(query));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void batch() {
+        List<Integer> values = values(50_000, 100_000);
+        TreeSet<Integer> expected = SetAssert.treeSet(values, null);
+        ArraySet<Integer> set = new ArraySet<>(values);
+        for (boolean sorted : new boolean[]{true, false}) {
+            Integer[] queries = values(100_000, 100_001).toArray(new Integer[0]);
+            if (sorted) {
+                Arrays.sort(queries);
+            }
+            boolean[] contains = new boolean[queries.length];
+            Integer[] floors = new Integer[queries.length];
+            Integer[] ceilings = new Integer[queries.length];
+            set.contains(queries, contains);
+            set.floor(queries, floors);
+            set.ceiling(queries, ceilings);
+            for (int i = 0; i < queries.length; i++) {
+                assertEquals(expected.contains(queries[i]), contains[i]);
+                assertEquals(expected.floor(queries[i]), floors[i]);
+                assertEquals(expected.ceiling(queries[i]), ceilings[i]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchNeedsRoomForResults() {
+        new ArraySet<>(List.of(1, 2, 3)).contains(new Integer[]{1, 2}, new boolean[1]);
+    }
+}
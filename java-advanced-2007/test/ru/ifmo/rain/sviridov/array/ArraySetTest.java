@@ -0,0 +1,76 @@
+package ru.ifmo.rain.sviridov.array;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class ArraySetTest {
+    private static final Comparator<Integer> BY_DIGITS = Comparator.comparing(Integer::reverse);
+
+    private final Random random = new Random(3);
+
+    private List<Integer> values(int count, int bound) {
+        return random.ints(count, -bound, bound).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Integer> queries(int bound, Comparator<Integer> comparator) {
+        List<Integer> queries = IntStream.rangeClosed(-bound - 2, bound + 2).boxed().collect(Collectors.toList());
+        queries.sort(comparator == null ? Comparator.naturalOrder() : comparator);
+        return queries;
+    }
+
+    @Test
+    public void navigation() {
+        for (Comparator<Integer> comparator : Arrays.asList(null, Comparator.<Integer>reverseOrder(), BY_DIGITS)) {
+            for (int size : new int[]{0, 1, 2, 10, 100, 1000}) {
+                List<Integer> values = values(size, 50);
+                SetAssert.assertSameViews(SetAssert.treeSet(values, comparator), new ArraySet<>(values, comparator),
+                        queries(50, comparator));
+            }
+        }
+    }
+
+    @Test
+    public void fromSortedSet() {
+        TreeSet<Integer> expected = SetAssert.treeSet(values(100, 50), null);
+        SetAssert.assertSameViews(expected, new ArraySet<>(expected), queries(50, null));
+        TreeSet<Integer> reversed = SetAssert.treeSet(expected, Comparator.reverseOrder());
+        SetAssert.assertSameViews(SetAssert.treeSet(expected, null), new ArraySet<>(reversed), queries(50, null));
+    }
+
+    @Test
+    public void builder() {
+        ArraySet.Builder<Integer> builder = ArraySet.builder(BY_DIGITS);
+        List<Integer> values = values(1000, 200);
+        builder.addAll(values.subList(0, 500));
+        for (Integer value : values.subList(500, 1000)) {
+            builder.add(value);
+        }
+        SetAssert.assertSameViews(SetAssert.treeSet(values, BY_DIGITS), builder.build(), queries(200, BY_DIGITS));
+        assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    public void equality() {
+        List<Integer> values = values(100, 100);
+        ArraySet<Integer> set = new ArraySet<>(values);
+        assertEquals(new HashSet<>(values), set);
+        assertEquals(set, new ArraySet<>(values, Comparator.reverseOrder()));
+        assertEquals(set.hashCode(), new HashSet<>(values).hashCode());
+        assertNotEquals(set, set.headSet(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reversedBoundsAreRejected() {
+        new ArraySet<>(List.of(1, 2, 3)).subSet(3, 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void isImmutable() {
+        new ArraySet<>(List.of(1, 2, 3)).iterator().remove();
+    }
+}
@@ -0,0 +1,82 @@
+package ru.ifmo.rain.sviridov.array;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+public class EytzingerIndexTest {
+    private final Random random = new Random(7);
+
+    /**
+     * Search through the index the way the sets do it, over the whole array.
+     */
+    private static int search(EytzingerIndex index, long[] array, long key) {
+        int block = index.block(key);
+        if (block < 0) {
+            return -1;
+        }
+        return Arrays.binarySearch(array, block, Math.min(block + EytzingerIndex.STRIDE, array.length), key);
+    }
+
+    @Test
+    public void blockSearchMatchesBinarySearch() {
+        for (int size = 0; size <= 300; size++) {
+            long[] array = random.longs(size, -1000, 1000).sorted().distinct().toArray();
+            if (array.length > 1) {
+                array[0] = Long.MIN_VALUE;
+                array[array.length - 1] = Long.MAX_VALUE;
+            }
+            EytzingerIndex index = new EytzingerIndex(array.length, i -> array[i]);
+            for (long key : new long[]{Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, Long.MAX_VALUE}) {
+                assertEquals(Arrays.binarySearch(array, key), search(index, array, key));
+            }
+            for (long key = -1002; key <= 1002; key++) {
+                assertEquals(Arrays.binarySearch(array, key), search(index, array, key));
+            }
+        }
+    }
+
+    @Test
+    public void indexedSetsMatchTreeSet() {
+        for (int size : PrimitiveArraySetTest.SIZES) {
+            long[] values = random.longs(size, -size, size + 1).toArray();
+            TreeSet<Long> expected = Arrays.stream(values).boxed().collect(Collectors.toCollection(TreeSet::new));
+            LongArraySet set = new LongArraySet(values).withSearchIndex();
+            PrimitiveArraySetTest.assertSameLongs(expected, set, PrimitiveArraySetTest.longQueries(size));
+            PrimitiveArraySetTest.assertSameLongs(expected.descendingSet(), set.descendingSet(),
+                    PrimitiveArraySetTest.longQueries(size));
+
+            TreeSet<Integer> ints = new TreeSet<>();
+            for (long value : values) {
+                ints.add((int) value);
+            }
+            IntArraySet intSet = new IntArraySet(ints).withSearchIndex();
+            PrimitiveArraySetTest.assertSameInts(ints, intSet, PrimitiveArraySetTest.intQueries(size));
+            PrimitiveArraySetTest.assertSameInts(ints.descendingSet(), intSet.descendingSet(),
+                    PrimitiveArraySetTest.intQueries(size));
+        }
+    }
+
+    @Test
+    public void indexOfSubset() {
+        long[] values = LongStream.range(0, 1000).map(i -> 3 * i).toArray();
+        LongArraySet set = new LongArraySet(values);
+        TreeSet<Long> expected = Arrays.stream(values).boxed().collect(Collectors.toCollection(TreeSet::new));
+        List<Long> queries = PrimitiveArraySetTest.longQueries(3000);
+        PrimitiveArraySetTest.assertSameLongs(expected.subSet(100L, true, 2000L, false),
+                set.subSet(100L, true, 2000L, false).withSearchIndex(), queries);
+        PrimitiveArraySetTest.assertSameLongs(expected.headSet(1L, true), set.withSearchIndex().headSet(1L, true), queries);
+        PrimitiveArraySetTest.assertSameLongs(expected.tailSet(2997L, false),
+                set.withSearchIndex().tailSet(2997L, false), queries);
+    }
+
+    @Test
+    public void indexIsShared() {
+        LongArraySet set = new LongArraySet(1, 2, 3).withSearchIndex();
+        assertSame(set, set.withSearchIndex());
+    }
+}
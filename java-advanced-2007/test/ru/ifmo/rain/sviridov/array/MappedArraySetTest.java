@@ -0,0 +1,210 @@
+package ru.ifmo.rain.sviridov.array;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MappedArraySetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("keys");
+    }
+
+    private void corrupt(int position, long value) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putLong(position, value);
+        Files.write(file, bytes);
+    }
+
+    private void truncate(int bytes) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - bytes));
+    }
+
+    private interface Opener {
+        MappedArraySet<?> open(Path file) throws IOException;
+    }
+
+    private void assertRefused(Opener opener) {
+        try {
+            opener.open(file);
+            fail("Corrupted key file accepted");
+        } catch (IOException expected) {
+            // refused
+        }
+    }
+
+    private static List<String> keys() {
+        return List.of("", "a", "ab", "b", "z", "\u00e9", "\u0436", "\ud7ff", "\ue000", "\uffff",
+                "\ud83d\ude00", "\ud83d\ude00a", "\ud83d\ude01");
+    }
+
+    @Test
+    public void longsRoundTrip() throws IOException {
+        Random random = new Random(1);
+        long[] values = random.longs(1000, -500, 500).toArray();
+        MappedArraySet.writeLongs(file, values);
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long value : values) {
+            expected.add(value);
+        }
+        List<Long> queries = new ArrayList<>();
+        for (long query = -510; query <= 510; query += 3) {
+            queries.add(query);
+        }
+        SetAssert.assertSameViews(expected, MappedArraySet.openLongs(file), queries);
+    }
+
+    @Test
+    public void emptyRoundTrip() throws IOException {
+        MappedArraySet.writeLongs(file, new long[0]);
+        assertTrue(MappedArraySet.openLongs(file).isEmpty());
+        MappedArraySet.writeStrings(file, List.of());
+        assertTrue(MappedArraySet.openStrings(file).isEmpty());
+        assertNull(MappedArraySet.openStrings(file).floor("a"));
+    }
+
+    @Test
+    public void stringsRoundTripInCodePointOrder() throws IOException {
+        List<String> values = new ArrayList<>(keys());
+        Collections.shuffle(values, new Random(2));
+        MappedArraySet.writeStrings(file, values);
+        TreeSet<String> expected = new TreeSet<>(MappedArraySet.CODE_POINT_ORDER);
+        expected.addAll(values);
+        assertEquals(values.size(), expected.size());
+
+        List<String> queries = new ArrayList<>(expected);
+        for (String value : keys()) {
+            queries.add(value + "\u0000");
+            queries.add(value + "\uffff");
+        }
+        queries.sort(MappedArraySet.CODE_POINT_ORDER);
+        SetAssert.assertSameViews(expected, MappedArraySet.openStrings(file), queries);
+    }
+
+    @Test
+    public void unpairedSurrogateIsRejected() throws IOException {
+        MappedArraySet.writeStrings(file, List.of("a", "b"));
+        byte[] before = Files.readAllBytes(file);
+        for (String malformed : List.of("\uD800", "x\uDC00", "\uDE00\uD83D")) {
+            try {
+                MappedArraySet.writeStrings(file, List.of("c", malformed));
+                fail("Unpaired surrogate written: " + malformed);
+            } catch (IllegalArgumentException expected) {
+                assertArrayEquals(before, Files.readAllBytes(file));
+            }
+        }
+        MappedArraySet<String> set = MappedArraySet.openStrings(file);
+        assertFalse(set.contains("\uD800"));
+        try {
+            set.floor("\uD800");
+            fail("Unpaired surrogate searched");
+        } catch (IllegalArgumentException expected) {
+            // rejected
+        }
+    }
+
+    @Test
+    public void rewriteKeepsOpenedSets() throws IOException {
+        MappedArraySet.writeStrings(file, List.of("old", "keys"));
+        MappedArraySet<String> old = MappedArraySet.openStrings(file);
+        MappedArraySet.writeStrings(file, List.of("new"));
+        assertEquals(List.of("keys", "old"), new ArrayList<>(old));
+        assertEquals(List.of("new"), new ArrayList<>(MappedArraySet.openStrings(file)));
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void truncatedLongsAreRefused() throws IOException {
+        MappedArraySet.writeLongs(file, new long[]{1, 2, 3});
+        truncate(1);
+        assertRefused(MappedArraySet::openLongs);
+        truncate(MappedArraySet.HEADER_SIZE);
+        assertRefused(MappedArraySet::openLongs);
+    }
+
+    @Test
+    public void truncatedStringsAreRefused() throws IOException {
+        MappedArraySet.writeStrings(file, List.of("aa", "bb", "cc"));
+        truncate(1);
+        assertRefused(MappedArraySet::openStrings);
+        truncate(6 + 8);
+        assertRefused(MappedArraySet::openStrings);
+    }
+
+    @Test
+    public void decreasingOffsetsAreRefused() throws IOException {
+        MappedArraySet.writeStrings(file, List.of("aa", "bb", "cc"));
+        corrupt(MappedArraySet.HEADER_SIZE + 8 * 2, 1);
+        assertRefused(MappedArraySet::openStrings);
+    }
+
+    @Test
+    public void nonZeroFirstOffsetIsRefused() throws IOException {
+        MappedArraySet.writeStrings(file, List.of("aa", "bb", "cc"));
+        corrupt(MappedArraySet.HEADER_SIZE, 1);
+        assertRefused(MappedArraySet::openStrings);
+    }
+
+    @Test
+    public void unorderedLongsAreRefused() throws IOException {
+        MappedArraySet.writeLongs(file, new long[]{1, 2, 3});
+        corrupt(MappedArraySet.HEADER_SIZE + 8, 3);
+        assertRefused(MappedArraySet::openLongs);
+        corrupt(MappedArraySet.HEADER_SIZE + 8, 0);
+        assertRefused(MappedArraySet::openLongs);
+    }
+
+    @Test
+    public void unorderedStringsAreRefused() throws IOException {
+        MappedArraySet.writeStrings(file, List.of("aa", "bb", "cc"));
+        byte[] bytes = Files.readAllBytes(file);
+        int data = MappedArraySet.HEADER_SIZE + 8 * 4;
+        bytes[data + 2] = 'a';
+        bytes[data + 3] = 'a';
+        Files.write(file, bytes);
+        assertRefused(MappedArraySet::openStrings);
+        bytes[data + 2] = 'd';
+        Files.write(file, bytes);
+        assertRefused(MappedArraySet::openStrings);
+    }
+
+    @Test
+    public void badCountIsRefused() throws IOException {
+        MappedArraySet.writeLongs(file, new long[]{1, 2, 3});
+        corrupt(16, -1);
+        assertRefused(MappedArraySet::openLongs);
+        corrupt(16, 4);
+        assertRefused(MappedArraySet::openLongs);
+    }
+
+    @Test
+    public void wrongTypeIsRefused() throws IOException {
+        MappedArraySet.writeLongs(file, new long[]{1, 2, 3});
+        assertRefused(MappedArraySet::openStrings);
+        MappedArraySet.writeStrings(file, List.of("a"));
+        assertRefused(MappedArraySet::openLongs);
+    }
+
+    @Test
+    public void foreignFileIsRefused() throws IOException {
+        Files.write(file, new byte[MappedArraySet.HEADER_SIZE + 8]);
+        assertRefused(MappedArraySet::openLongs);
+        Files.write(file, new byte[3]);
+        assertRefused(MappedArraySet::openStrings);
+    }
+}
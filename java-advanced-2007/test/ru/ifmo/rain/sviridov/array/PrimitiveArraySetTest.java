@@ -0,0 +1,125 @@
+package ru.ifmo.rain.sviridov.array;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveArraySetTest {
+    static final int[] SIZES = {0, 1, 15, 16, 17, 100, 1000, 5000};
+
+    private final Random random = new Random(4);
+
+    private int[] ints(int size) {
+        int[] values = random.ints(size, -size, size + 1).toArray();
+        if (size > 2) {
+            values[0] = Integer.MIN_VALUE;
+            values[1] = Integer.MAX_VALUE;
+        }
+        return values;
+    }
+
+    static List<Integer> intQueries(int size) {
+        List<Integer> queries = new ArrayList<>(List.of(Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE));
+        for (int query = -size - 2; query <= size + 2; query++) {
+            queries.add(query);
+        }
+        queries.sort(Comparator.naturalOrder());
+        return queries;
+    }
+
+    static List<Long> longQueries(int size) {
+        List<Long> queries = LongStream.rangeClosed(-size - 2, size + 2).boxed().collect(Collectors.toList());
+        queries.addAll(List.of(Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MAX_VALUE));
+        queries.sort(Comparator.naturalOrder());
+        return queries;
+    }
+
+    static void assertSameInts(NavigableSet<Integer> expected, IntArraySet actual, List<Integer> queries) {
+        SetAssert.assertSameViews(expected, actual, queries);
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), actual.toIntArray());
+        for (int query : queries) {
+            Integer floor = expected.floor(query);
+            int index = actual.floorIndex(query);
+            assertEquals(floor, index < 0 ? null : (Integer) actual.getInt(index));
+            Integer higher = expected.higher(query);
+            index = actual.higherIndex(query);
+            assertEquals(higher, index < 0 ? null : (Integer) actual.getInt(index));
+        }
+    }
+
+    static void assertSameLongs(NavigableSet<Long> expected, LongArraySet actual, List<Long> queries) {
+        SetAssert.assertSameViews(expected, actual, queries);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), actual.toLongArray());
+        for (long query : queries) {
+            Long ceiling = expected.ceiling(query);
+            int index = actual.ceilingIndex(query);
+            assertEquals(ceiling, index < 0 ? null : (Long) actual.getLong(index));
+            Long lower = expected.lower(query);
+            index = actual.lowerIndex(query);
+            assertEquals(lower, index < 0 ? null : (Long) actual.getLong(index));
+        }
+    }
+
+    @Test
+    public void ints() {
+        for (int size : SIZES) {
+            int[] values = ints(size);
+            TreeSet<Integer> expected = Arrays.stream(values).boxed().collect(Collectors.toCollection(TreeSet::new));
+            IntArraySet set = new IntArraySet(values);
+            assertSameInts(expected, set, intQueries(size));
+            assertSameInts(expected.descendingSet(), set.descendingSet(), intQueries(size));
+            assertSameInts(expected, new IntArraySet(new ArrayList<>(expected.descendingSet())), intQueries(size));
+        }
+    }
+
+    @Test
+    public void longs() {
+        for (int size : SIZES) {
+            long[] values = random.longs(size, -size, size + 1).toArray();
+            TreeSet<Long> expected = Arrays.stream(values).boxed().collect(Collectors.toCollection(TreeSet::new));
+            LongArraySet set = new LongArraySet(values);
+            assertSameLongs(expected, set, longQueries(size));
+            assertSameLongs(expected.descendingSet(), set.descendingSet(), longQueries(size));
+            assertSameLongs(expected, new LongArraySet(expected), longQueries(size));
+        }
+    }
+
+    @Test
+    public void valuesAreCopied() {
+        int[] values = {3, 1, 2};
+        IntArraySet set = new IntArraySet(values);
+        values[0] = 10;
+        assertArrayEquals(new int[]{1, 2, 3}, set.toIntArray());
+        set.toIntArray()[0] = 10;
+        assertEquals(1, set.getInt(0));
+    }
+
+    @Test
+    public void boxedQueries() {
+        IntArraySet set = new IntArraySet(1, 2, 3);
+        assertFalse(set.contains((Object) 2L));
+        assertFalse(set.contains("2"));
+        assertTrue(set.contains((Object) 2));
+        assertEquals(Collections.reverseOrder(), set.descendingSet().comparator());
+        assertNull(set.comparator());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexOutOfRange() {
+        new LongArraySet(1, 2, 3).subSet(1L, 3L).getLong(2);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void firstOfEmpty() {
+        new IntArraySet(1, 2, 3).headSet(1).first();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reversedBoundsAreRejected() {
+        new IntArraySet(1, 2, 3).descendingSet().subSet(1, 3);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.ifmo.rain.sviridov.array;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks of a {@link NavigableSet} against a reference implementation.
+ */
+final class SetAssert {
+    private SetAssert() {
+    }
+
+    static <T> TreeSet<T> treeSet(Collection<? extends T> values, Comparator<? super T> comparator) {
+        TreeSet<T> set = new TreeSet<>(comparator);
+        set.addAll(values);
+        return set;
+    }
+
+    static <T> void assertSameSet(NavigableSet<T> expected, NavigableSet<T> actual, List<T> queries) {
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(actual));
+        assertEquals(new ArrayList<>(expected.descendingSet()), new ArrayList<>(actual.descendingSet()));
+        for (T query : queries) {
+            assertEquals("contains " + query, expected.contains(query), actual.contains(query));
+            assertEquals("floor " + query, expected.floor(query), actual.floor(query));
+            assertEquals("ceiling " + query, expected.ceiling(query), actual.ceiling(query));
+            assertEquals("lower " + query, expected.lower(query), actual.lower(query));
+            assertEquals("higher " + query, expected.higher(query), actual.higher(query));
+        }
+    }
+
+    /**
+     * Compares the sets, their descending sets and subsets bounded by elements of {@code expected}.
+     */
+    static <T> void assertSameViews(NavigableSet<T> expected, NavigableSet<T> actual, List<T> queries) {
+        assertSameSet(expected, actual, queries);
+        assertSameSet(expected.descendingSet(), actual.descendingSet(), queries);
+        if (expected.isEmpty()) {
+            return;
+        }
+        List<T> elements = new ArrayList<>(expected);
+        T low = elements.get(elements.size() / 4);
+        T high = elements.get(3 * elements.size() / 4);
+        assertSameSet(expected.subSet(low, true, high, false), actual.subSet(low, true, high, false), queries);
+        assertSameSet(expected.headSet(high, true), actual.headSet(high, true), queries);
+        assertSameSet(expected.tailSet(low, false), actual.tailSet(low, false), queries);
+        assertSameSet(expected.descendingSet().subSet(high, true, low, true),
+                actual.descendingSet().subSet(high, true, low, true), queries);
+    }
+}
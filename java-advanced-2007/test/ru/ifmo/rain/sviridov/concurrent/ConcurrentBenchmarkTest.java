@@ -0,0 +1,55 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentBenchmarkTest {
+    @Test
+    public void operationsMatchTheirStreams() throws InterruptedException {
+        assertEquals(ConcurrentBenchmark.OPERATIONS.keySet(), ConcurrentBenchmark.STREAMS.keySet());
+        List<Integer> list = IntStream.range(-500, 1500).boxed().collect(Collectors.toList());
+        for (String name : ConcurrentBenchmark.OPERATIONS.keySet()) {
+            Object expected = ConcurrentBenchmark.STREAMS.get(name).run(list, 3);
+            for (IterativeParallelism.Backend backend : List.of(IterativeParallelism.Backend.THREADS, IterativeParallelism.Backend.POOL)) {
+                assertEquals(name, expected, ConcurrentBenchmark.OPERATIONS.get(name).run(new IterativeParallelism(backend), 4, list, 3));
+            }
+            try (ParallelMapperImpl mapper = new ParallelMapperImpl(3)) {
+                assertEquals(name, expected, ConcurrentBenchmark.OPERATIONS.get(name).run(new IterativeParallelism(mapper), 4, list, 3));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesAreNearestRank() {
+        long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, ConcurrentBenchmark.percentile(sorted, 0.5));
+        assertEquals(9, ConcurrentBenchmark.percentile(sorted, 0.9));
+        assertEquals(10, ConcurrentBenchmark.percentile(sorted, 0.99));
+        assertEquals(7, ConcurrentBenchmark.percentile(new long[]{7}, 0.5));
+    }
+
+    @Test
+    public void reportsEveryCaseOfTheGrid() throws InterruptedException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            ConcurrentBenchmark.main(new String[]{"100", "0", "2", "1"});
+        } finally {
+            System.setOut(out);
+        }
+        List<String> lines = bytes.toString(StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+        int paths = 1 + 2 * 4;
+        assertEquals(1 + ConcurrentBenchmark.OPERATIONS.size() * paths, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith("op"));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("any") && line.contains(" mapper ")));
+    }
+}
@@ -0,0 +1,250 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class IterativeParallelismTest {
+    private static final int[] THREADS = {1, 2, 3, 8};
+    private static final ParallelMapperImpl MAPPER = new ParallelMapperImpl(4);
+
+    private final Random random = new Random(6);
+
+    @AfterClass
+    public static void closeMapper() {
+        MAPPER.close();
+    }
+
+    static List<IterativeParallelism> backends() {
+        return List.of(new IterativeParallelism(IterativeParallelism.Backend.THREADS),
+                new IterativeParallelism(IterativeParallelism.Backend.VIRTUAL_THREADS),
+                new IterativeParallelism(IterativeParallelism.Backend.POOL),
+                new IterativeParallelism(MAPPER));
+    }
+
+    private List<Integer> values(int size) {
+        return random.ints(size, -1000, 1000).boxed().collect(Collectors.toList());
+    }
+
+    private static Map<String, Iterable<Integer>> sources(List<Integer> values) {
+        Map<String, Iterable<Integer>> sources = new LinkedHashMap<>();
+        sources.put("ArrayList", new ArrayList<>(values));
+        sources.put("LinkedList", new LinkedList<>(values));
+        sources.put("ArrayDeque", new ArrayDeque<>(values));
+        sources.put("TreeSet", new TreeSet<>(values));
+        sources.put("HashSet", new HashSet<>(values));
+        sources.put("lazy", () -> values.iterator());
+        return sources;
+    }
+
+    private static List<Integer> sequential(Iterable<Integer> source) {
+        List<Integer> list = new ArrayList<>();
+        source.forEach(list::add);
+        return list;
+    }
+
+    static boolean causedBy(Throwable e, String message) {
+        if (e == null) {
+            return false;
+        }
+        if (message.equals(e.getMessage())) {
+            return true;
+        }
+        for (Throwable suppressed : e.getSuppressed()) {
+            if (causedBy(suppressed, message)) {
+                return true;
+            }
+        }
+        return causedBy(e.getCause(), message);
+    }
+
+    @Test
+    public void keepsEncounterOrder() throws InterruptedException {
+        for (int size : new int[]{0, 1, 63, 64, 1000, 10_000}) {
+            List<Integer> values = values(size);
+            for (Map.Entry<String, Iterable<Integer>> source : sources(values).entrySet()) {
+                List<Integer> expected = sequential(source.getValue());
+                for (IterativeParallelism parallelism : backends()) {
+                    for (int threads : THREADS) {
+                        String message = source.getKey() + " of " + size + " with " + threads + " threads";
+                        assertEquals(message, expected.stream().map(Object::toString).collect(Collectors.joining()),
+                                parallelism.join(threads, source.getValue()));
+                        assertEquals(message, expected.stream().map(value -> value * 2).collect(Collectors.toList()),
+                                parallelism.map(threads, source.getValue(), value -> value * 2));
+                        assertEquals(message, expected.stream().filter(value -> value % 3 == 0).collect(Collectors.toList()),
+                                parallelism.filter(threads, source.getValue(), value -> value % 3 == 0));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<Thread> threadsUsed(IterativeParallelism parallelism, List<Integer> values) throws InterruptedException {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        assertEquals(values, parallelism.map(4, values, value -> {
+            threads.add(Thread.currentThread());
+            return value;
+        }));
+        return threads;
+    }
+
+    @Test
+    public void backendsRunPiecesWhereExpected() throws InterruptedException {
+        List<Integer> values = values(1000);
+        Thread caller = Thread.currentThread();
+        assertEquals(4, threadsUsed(new IterativeParallelism(IterativeParallelism.Backend.THREADS), values).size());
+        assertEquals(4, threadsUsed(new IterativeParallelism(IterativeParallelism.Backend.VIRTUAL_THREADS), values).size());
+        for (Thread thread : threadsUsed(new IterativeParallelism(IterativeParallelism.Backend.POOL), values)) {
+            assertTrue(thread.toString(), thread == caller || thread instanceof ForkJoinWorkerThread);
+        }
+        assertFalse(threadsUsed(new IterativeParallelism(MAPPER), values).contains(caller));
+        try {
+            new IterativeParallelism(IterativeParallelism.Backend.MAPPER);
+            fail("Mapper backend without a mapper");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void findsExtremes() throws InterruptedException {
+        List<Integer> values = values(5000);
+        for (Map.Entry<String, Iterable<Integer>> source : sources(values).entrySet()) {
+            for (IterativeParallelism parallelism : backends()) {
+                for (int threads : THREADS) {
+                    String message = source.getKey() + " with " + threads + " threads";
+                    assertEquals(message, Collections.max(values), parallelism.maximum(threads, source.getValue(), Comparator.naturalOrder()));
+                    assertEquals(message, Collections.min(values), parallelism.minimum(threads, source.getValue(), Comparator.naturalOrder()));
+                    assertTrue(message, parallelism.any(threads, source.getValue(), value -> value.equals(values.get(4321))));
+                    assertFalse(message, parallelism.any(threads, source.getValue(), value -> value > 1000));
+                    assertTrue(message, parallelism.all(threads, source.getValue(), value -> value < 1000));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsFirstAndAnyMatch() throws InterruptedException {
+        List<Integer> values = values(10_000);
+        for (IterativeParallelism parallelism : backends()) {
+            for (int threads : THREADS) {
+                String message = threads + " threads";
+                for (int divisor : new int[]{7, 997, 5000}) {
+                    Optional<Integer> first = values.stream().filter(value -> value % divisor == 0 && value != 0).findFirst();
+                    assertEquals(message, first, parallelism.findFirst(threads, values, value -> value % divisor == 0 && value != 0));
+                    Optional<Integer> any = parallelism.findAny(threads, values, value -> value % divisor == 0 && value != 0);
+                    assertEquals(message, first.isPresent(), any.isPresent());
+                    any.ifPresent(value -> assertTrue(value % divisor == 0 && value != 0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void searchStopsOtherPieces() throws InterruptedException {
+        List<Integer> values = IntStream.range(0, 4000).boxed().collect(Collectors.toList());
+        for (IterativeParallelism parallelism : backends()) {
+            AtomicInteger tested = new AtomicInteger();
+            Predicate<Integer> slowAfterFirst = value -> {
+                tested.incrementAndGet();
+                if (value == 0) {
+                    return true;
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            };
+            assertEquals(Optional.of(0), parallelism.findFirst(4, values, slowAfterFirst));
+            assertTrue(tested.toString(), tested.get() < 1000);
+            tested.set(0);
+            assertTrue(parallelism.any(4, values, slowAfterFirst));
+            assertTrue(tested.toString(), tested.get() < 1000);
+        }
+    }
+
+    @Test
+    public void reducesAndScansInOrder() throws InterruptedException {
+        List<Integer> values = values(3000);
+        Monoid<String> concat = new Monoid<>("", String::concat);
+        List<String> strings = values.stream().map(value -> Integer.toString(value % 10)).collect(Collectors.toList());
+        List<String> prefixes = new ArrayList<>();
+        StringBuilder prefix = new StringBuilder();
+        for (String string : strings) {
+            prefixes.add(prefix.append(string).toString());
+        }
+        for (IterativeParallelism parallelism : backends()) {
+            for (int threads : THREADS) {
+                String message = threads + " threads";
+                assertEquals(message, values.stream().mapToLong(Integer::longValue).sum(),
+                        (long) parallelism.mapReduce(threads, values, Integer::longValue, new Monoid<>(0L, Long::sum)));
+                assertEquals(message, String.join("", strings), parallelism.mapReduce(threads, strings, Function.identity(), concat));
+                assertEquals(message, prefixes, parallelism.scan(threads, strings, concat));
+                assertEquals(message, values.stream().collect(Collectors.groupingBy(value -> Math.floorMod(value, 7), Collectors.counting())),
+                        parallelism.groupByCount(threads, values, value -> Math.floorMod(value, 7)));
+            }
+        }
+    }
+
+    @Test
+    public void sortIsStable() throws InterruptedException {
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            entries.add(Map.entry(random.nextInt(20), i));
+        }
+        List<Map.Entry<Integer, Integer>> expected = new ArrayList<>(entries);
+        expected.sort(Map.Entry.comparingByKey());
+        for (IterativeParallelism parallelism : backends()) {
+            for (int threads : THREADS) {
+                assertEquals(threads + " threads", expected, parallelism.sort(threads, entries, Map.Entry.comparingByKey()));
+            }
+        }
+        assertEquals(List.of(), backends().get(0).sort(4, List.<Integer>of(), Comparator.naturalOrder()));
+    }
+
+    @Test
+    public void lazySourceIsWalkedOnce() throws InterruptedException {
+        AtomicInteger walks = new AtomicInteger();
+        AtomicInteger produced = new AtomicInteger();
+        Iterable<Integer> lazy = () -> {
+            walks.incrementAndGet();
+            return IntStream.range(0, 100_000).peek(value -> produced.incrementAndGet()).iterator();
+        };
+        for (IterativeParallelism parallelism : backends()) {
+            walks.set(0);
+            produced.set(0);
+            assertEquals(IntStream.range(0, 100_000).boxed().collect(Collectors.toList()), parallelism.map(4, lazy, Function.identity()));
+            assertEquals(1, walks.get());
+            assertEquals(100_000, produced.get());
+        }
+    }
+
+    @Test
+    public void sourceErrorsReachCaller() throws InterruptedException {
+        Iterable<Integer> failing = () -> IntStream.range(0, 10_000).map(value -> {
+            if (value == 7000) {
+                throw new IllegalStateException("source failed");
+            }
+            return value;
+        }).iterator();
+        for (IterativeParallelism parallelism : backends()) {
+            try {
+                parallelism.join(4, failing);
+                fail("Source error swallowed");
+            } catch (RuntimeException e) {
+                assertTrue(e.toString(), causedBy(e, "source failed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class MapperMetricsTest {
+    private static final List<Integer> VALUES = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+
+    private static Set<ObjectName> registered() throws JMException {
+        return ManagementFactory.getPlatformMBeanServer()
+                .queryNames(new ObjectName("ru.ifmo.rain.sviridov.concurrent:type=ParallelMapper,*"), null);
+    }
+
+    @Test
+    public void countsCallsElementsAndExceptions() throws InterruptedException {
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(3, true)) {
+            mapper.map(value -> value + 1, VALUES);
+            try {
+                mapper.map(value -> {
+                    if (value % 100 == 0) {
+                        throw new IllegalStateException();
+                    }
+                    return value;
+                }, VALUES);
+                fail("Failures swallowed");
+            } catch (RuntimeException ignored) {
+            }
+            MapperMetrics.Snapshot snapshot = mapper.metrics().snapshot();
+            assertEquals(2, snapshot.calls());
+            assertEquals(0, snapshot.pendingCalls());
+            assertEquals(2000, snapshot.elements());
+            assertEquals(10, snapshot.exceptions());
+            assertTrue(snapshot.tasks() > 0 && snapshot.tasks() <= snapshot.elements());
+            assertEquals(snapshot.tasks(), snapshot.taskLatencyHistogram().values().stream().mapToLong(Long::longValue).sum());
+            assertTrue(snapshot.taskLatencyPercentile(0.5) <= snapshot.taskLatencyPercentile(0.99));
+            assertTrue(snapshot.utilization() >= 0 && snapshot.utilization() <= 1);
+        }
+    }
+
+    @Test
+    public void idleWorkersAreCounted() throws InterruptedException {
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(4, true)) {
+            mapper.map(value -> value, VALUES);
+            for (int i = 0; i < 500 && mapper.metrics().getIdleWorkers() < 4; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, mapper.metrics().getIdleWorkers());
+            assertEquals(0, mapper.metrics().getQueuedTasks());
+            assertTrue(mapper.metrics().getParks() > 0);
+        }
+    }
+
+    @Test
+    public void mxBeanLivesUntilClose() throws JMException {
+        Set<ObjectName> before = registered();
+        ParallelMapperImpl mapper = new ParallelMapperImpl(2, true);
+        Set<ObjectName> during = registered();
+        during.removeAll(before);
+        assertEquals(1, during.size());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(2, server.getAttribute(during.iterator().next(), "Workers"));
+        mapper.close();
+        assertEquals(before, registered());
+    }
+
+    @Test
+    public void metricsAreOffByDefault() {
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(2)) {
+            assertNull(mapper.metrics());
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelMapperImplTest {
+    private ParallelMapperImpl mapper;
+
+    @Before
+    public void setUp() {
+        mapper = new ParallelMapperImpl(4);
+    }
+
+    @After
+    public void tearDown() {
+        mapper.close();
+    }
+
+    private static Function<Integer, Integer> slowSquare(long seed) {
+        return value -> {
+            Random random = new Random(seed + value);
+            long end = System.nanoTime() + random.nextInt(200_000);
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            return value * value;
+        };
+    }
+
+    private static List<Integer> range(int size) {
+        return IntStream.range(0, size).boxed().collect(Collectors.toList());
+    }
+
+    private static <R> List<R> drain(Iterator<R> iterator) {
+        List<R> result = new ArrayList<>();
+        iterator.forEachRemaining(result::add);
+        return result;
+    }
+
+    /**
+     * Iterator over {@code 0, 1, 2, ...} counting the elements taken from it.
+     */
+    private static Iterator<Integer> counting(AtomicInteger taken, int size) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return taken.get() < size;
+            }
+
+            @Override
+            public Integer next() {
+                return taken.getAndIncrement();
+            }
+        };
+    }
+
+    @Test
+    public void mapKeepsOrder() throws InterruptedException {
+        List<Integer> input = range(1000);
+        assertEquals(input.stream().map(value -> value * value).collect(Collectors.toList()), mapper.map(slowSquare(1), input));
+        assertEquals(List.of(), mapper.map(slowSquare(1), List.<Integer>of()));
+    }
+
+    @Test
+    public void nestedCallsAreStolen() throws InterruptedException {
+        List<List<Integer>> results = mapper.map(outer -> {
+            try {
+                return mapper.map(inner -> outer * inner, range(100));
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }, range(3));
+        for (int outer = 0; outer < 3; outer++) {
+            int factor = outer;
+            assertEquals(range(100).stream().map(inner -> factor * inner).collect(Collectors.toList()), results.get(outer));
+        }
+    }
+
+    @Test
+    public void mapFailuresAreSuppressed() throws InterruptedException {
+        try {
+            mapper.map(value -> {
+                if (value % 10 == 0) {
+                    throw new IllegalStateException("failed " + value);
+                }
+                return value;
+            }, range(100));
+            fail("Failures swallowed");
+        } catch (RuntimeException e) {
+            assertEquals(10, e.getSuppressed().length);
+        }
+        assertEquals(range(10), mapper.map(Function.identity(), range(10)));
+    }
+
+    @Test
+    public void concurrentCallersGetTheirOwnResults() throws InterruptedException {
+        List<Thread> callers = new ArrayList<>();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (int caller = 0; caller < 8; caller++) {
+            int offset = caller * 1000;
+            callers.add(new Thread(() -> {
+                try {
+                    List<Integer> input = range(300).stream().map(value -> value + offset).collect(Collectors.toList());
+                    for (int i = 0; i < 5; i++) {
+                        assertEquals(input.stream().map(value -> value * value).collect(Collectors.toList()),
+                                mapper.map(slowSquare(offset), input));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        callers.forEach(Thread::start);
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals(List.of(), new ArrayList<>(failures));
+    }
+
+    @Test
+    public void shortCallIsNotStarvedByLongCall() throws InterruptedException {
+        AtomicBoolean longDone = new AtomicBoolean();
+        Thread longCall = new Thread(() -> {
+            try {
+                mapper.map(value -> {
+                    long end = System.nanoTime() + 100_000;
+                    while (System.nanoTime() < end) {
+                        Thread.onSpinWait();
+                    }
+                    return value;
+                }, range(20_000));
+                longDone.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        longCall.start();
+        Thread.sleep(100);
+        assertEquals(range(10), mapper.map(Function.identity(), range(10)));
+        assertFalse("Short call waited for the long one", longDone.get());
+        longCall.join();
+        assertTrue(longDone.get());
+    }
+
+    @Test
+    public void slicesFollowElementCost() throws InterruptedException {
+        try (ParallelMapperImpl measured = new ParallelMapperImpl(4, true)) {
+            measured.map(value -> value + 1, range(100_000));
+            MapperMetrics.Snapshot cheap = measured.metrics().snapshot();
+            assertEquals(100_000, cheap.elements());
+            assertTrue(cheap.toString(), cheap.tasks() < 10_000);
+
+            measured.map(value -> {
+                long end = System.nanoTime() + 200_000;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                return value;
+            }, range(200));
+            MapperMetrics.Snapshot costly = measured.metrics().snapshot();
+            assertEquals(200, costly.elements() - cheap.elements());
+            assertEquals(200, costly.tasks() - cheap.tasks());
+        }
+    }
+
+    @Test
+    public void orderedStreamKeepsInputOrder() {
+        for (int window : new int[]{1, 3, 64}) {
+            List<Integer> expected = range(500).stream().map(value -> value * value).collect(Collectors.toList());
+            assertEquals(expected, drain(mapper.mapStream(slowSquare(window), range(500).iterator(), window, true)));
+        }
+    }
+
+    @Test
+    public void unorderedStreamYieldsEveryResult() {
+        List<Integer> results = drain(mapper.mapStream(slowSquare(2), range(500).iterator(), 16, false));
+        results.sort(Comparator.naturalOrder());
+        assertEquals(range(500).stream().map(value -> value * value).collect(Collectors.toList()), results);
+    }
+
+    @Test
+    public void windowBoundsElementsInFlight() {
+        AtomicInteger taken = new AtomicInteger();
+        Iterator<Integer> results = mapper.mapStream(slowSquare(3), counting(taken, 1000), 8, true);
+        for (int consumed = 0; results.hasNext(); consumed++) {
+            assertTrue(taken.get() - consumed <= 8);
+            results.next();
+        }
+        assertEquals(1000, taken.get());
+    }
+
+    @Test
+    public void failureThrowsAtItsElement() {
+        for (boolean ordered : new boolean[]{true, false}) {
+            Iterator<Integer> results = mapper.mapStream(value -> {
+                if (value == 5) {
+                    throw new IllegalStateException("five");
+                }
+                return value;
+            }, range(10).iterator(), 4, ordered);
+            Set<Integer> seen = new HashSet<>();
+            int failures = 0;
+            while (results.hasNext()) {
+                try {
+                    Integer value = results.next();
+                    if (ordered) {
+                        assertEquals(seen.size() + (seen.size() >= 5 ? 1 : 0), (int) value);
+                    }
+                    seen.add(value);
+                } catch (RuntimeException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                    failures++;
+                }
+            }
+            assertEquals(1, failures);
+            assertEquals(9, seen.size());
+        }
+    }
+
+    @Test
+    public void closeStopsPullingInput() {
+        AtomicInteger taken = new AtomicInteger();
+        ParallelMapperImpl.ResultIterator<Integer> results = mapper.mapStream(slowSquare(4), counting(taken, Integer.MAX_VALUE), 8, true);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i * i, (int) results.next());
+        }
+        results.close();
+        assertFalse(results.hasNext());
+        assertTrue(taken.get() <= 10 + 8);
+    }
+
+    @Test
+    public void closeCancelsSubscription() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicLong emitted = new AtomicLong();
+        Flow.Publisher<Integer> endless = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                for (long i = 0; i < n && !cancelled.get(); i++) {
+                    subscriber.onNext((int) emitted.getAndIncrement());
+                }
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        });
+        ParallelMapperImpl.ResultIterator<Integer> results = mapper.mapStream(Function.identity(), endless, 4, true);
+        assertEquals(List.of(0, 1, 2), List.of(results.next(), results.next(), results.next()));
+        results.close();
+        assertTrue(cancelled.get());
+        assertFalse(results.hasNext());
+        assertTrue(emitted.get() <= 3 + 4);
+    }
+
+    @Test
+    public void closeWakesBlockedConsumer() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ParallelMapperImpl.ResultIterator<Integer> results = mapper.mapStream(value -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return value;
+        }, range(10).iterator(), 2, true);
+        AtomicBoolean hasNext = new AtomicBoolean(true);
+        Thread consumer = new Thread(() -> hasNext.set(results.hasNext()));
+        consumer.start();
+        Thread.sleep(100);
+        results.close();
+        consumer.join(5000);
+        release.countDown();
+        assertFalse(consumer.isAlive());
+        assertFalse(hasNext.get());
+    }
+}
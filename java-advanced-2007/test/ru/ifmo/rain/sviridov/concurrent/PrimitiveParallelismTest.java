@@ -0,0 +1,100 @@
+package ru.ifmo.rain.sviridov.concurrent;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveParallelismTest {
+    private static final int[] THREADS = {1, 2, 5};
+    private static final ParallelMapperImpl MAPPER = new ParallelMapperImpl(3);
+
+    private final Random random = new Random(14);
+
+    @AfterClass
+    public static void closeMapper() {
+        MAPPER.close();
+    }
+
+    private static List<PrimitiveParallelism> backends() {
+        return List.of(new PrimitiveParallelism(IterativeParallelism.Backend.THREADS),
+                new PrimitiveParallelism(IterativeParallelism.Backend.POOL),
+                new PrimitiveParallelism(MAPPER));
+    }
+
+    @Test
+    public void intReductionsMatchSequential() throws InterruptedException {
+        int[] values = random.ints(100_000, -1_000_000, 1_000_000).toArray();
+        long[] histogram = new long[10];
+        Arrays.stream(values).filter(value -> value >= -500_000 && value < 500_000)
+                .forEach(value -> histogram[(value + 500_000) / 100_000]++);
+        for (PrimitiveParallelism parallelism : backends()) {
+            for (int threads : THREADS) {
+                assertEquals(Arrays.stream(values).asLongStream().sum(), parallelism.sum(threads, values));
+                assertEquals(Arrays.stream(values).max().getAsInt(), parallelism.maximum(threads, values));
+                assertEquals(Arrays.stream(values).min().getAsInt(), parallelism.minimum(threads, values));
+                assertEquals(Arrays.stream(values).filter(value -> value % 3 == 0).count(), parallelism.countIf(threads, values, value -> value % 3 == 0));
+                assertArrayEquals(histogram, parallelism.histogram(threads, values, -500_000, 500_000, 10));
+            }
+        }
+    }
+
+    @Test
+    public void longBufferIsReadFromPositionToLimit() throws InterruptedException {
+        long[] values = random.longs(50_000).toArray();
+        LongBuffer buffer = ByteBuffer.allocateDirect(8 * values.length).asLongBuffer().put(values);
+        buffer.position(100).limit(values.length - 100);
+        long[] window = Arrays.copyOfRange(values, 100, values.length - 100);
+        long[] halves = {Arrays.stream(window).filter(value -> value < 0).count(), Arrays.stream(window).filter(value -> value >= 0).count()};
+        for (PrimitiveParallelism parallelism : backends()) {
+            for (int threads : THREADS) {
+                assertEquals(Arrays.stream(window).sum(), parallelism.sum(threads, buffer));
+                assertEquals(Arrays.stream(window).max().getAsLong(), parallelism.maximum(threads, buffer));
+                assertEquals(Arrays.stream(window).min().getAsLong(), parallelism.minimum(threads, buffer));
+                assertArrayEquals(halves, parallelism.histogram(threads, buffer, Long.MIN_VALUE, Long.MAX_VALUE, 2));
+                assertEquals(100, buffer.position());
+            }
+        }
+    }
+
+    @Test
+    public void doubleReductionsMatchSequential() throws InterruptedException {
+        double[] values = random.ints(100_000, -1000, 1000).asDoubleStream().toArray();
+        values[500] = Double.NaN;
+        double[] numbers = Arrays.stream(values).filter(value -> !Double.isNaN(value)).toArray();
+        long[] histogram = new long[4];
+        Arrays.stream(numbers).forEach(value -> histogram[(int) ((value + 1000) / 500)]++);
+        for (PrimitiveParallelism parallelism : backends()) {
+            for (int threads : THREADS) {
+                assertEquals(Arrays.stream(numbers).sum(), parallelism.sum(threads, numbers), 0);
+                assertEquals(Arrays.stream(numbers).max().getAsDouble(), parallelism.maximum(threads, numbers), 0);
+                assertEquals(Arrays.stream(numbers).min().getAsDouble(), parallelism.minimum(threads, numbers), 0);
+                assertTrue(Double.isNaN(parallelism.maximum(threads, values)));
+                assertArrayEquals(histogram, parallelism.histogram(threads, values, -1000, 1000, 4));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsEmptyInputsAndRanges() throws InterruptedException {
+        PrimitiveParallelism parallelism = new PrimitiveParallelism();
+        assertEquals(0, parallelism.sum(4, new int[0]));
+        try {
+            parallelism.maximum(4, new long[0]);
+            fail("Maximum of no elements");
+        } catch (NoSuchElementException ignored) {
+        }
+        try {
+            parallelism.histogram(4, new int[]{1}, 5, 5, 3);
+            fail("Empty histogram range");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFinderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(5);
+
+    private byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content);
+    }
+
+    private List<Set<Path>> run(HashAlgorithm algorithm, int threads) throws IOException, RecursiveWalkException {
+        HashingEngine engine = new HashingEngine(algorithm);
+        StringWriter output = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(output)) {
+            new DuplicateFinder(engine, null, new WalkStatistics(engine), threads)
+                    .run(new BufferedReader(new StringReader(folder.getRoot() + "\n")), writer);
+        }
+
+        List<Set<Path>> groups = new ArrayList<>();
+        Set<Path> group = new HashSet<>();
+        for (String line : output.toString().split("\n", -1)) {
+            if (line.isEmpty()) {
+                if (!group.isEmpty()) {
+                    groups.add(group);
+                }
+                group = new HashSet<>();
+                continue;
+            }
+            int space = line.indexOf(' ');
+            Path file = Path.of(line.substring(space + 1));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                assertEquals(algorithm.format(engine.hash(channel)), line.substring(0, space));
+            }
+            group.add(file);
+        }
+        return groups;
+    }
+
+    private void assertGroups(List<Set<Path>> expected) throws IOException, RecursiveWalkException {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            for (int threads : new int[]{0, 3}) {
+                assertEquals(algorithm + " with " + threads + " threads", new HashSet<>(expected), new HashSet<>(run(algorithm, threads)));
+            }
+        }
+    }
+
+    @Test
+    public void groupsIdenticalFiles() throws IOException, RecursiveWalkException {
+        byte[] large = bytes(100_000);
+        byte[] small = bytes(100);
+        byte[] middle = bytes(3 * 4096);
+        byte[] changed = middle.clone();
+        changed[middle.length / 2] ^= 1;
+        write("unique", bytes(100_000));
+        assertGroups(List.of(
+                Set.of(write("a", large), write("dir/a", large), write("dir/sub/a", large)),
+                Set.of(write("b", small), write("dir/b", small)),
+                Set.of(write("c", middle), write("dir/c", middle)),
+                Set.of(write("d", changed), write("dir/d", changed))
+        ));
+    }
+
+    @Test
+    public void noDuplicates() throws IOException, RecursiveWalkException {
+        write("a", bytes(10_000));
+        write("b", bytes(10_000));
+        write("c", new byte[0]);
+        assertGroups(List.of());
+    }
+
+    @Test
+    public void largeGroupReopensFiles() throws IOException, RecursiveWalkException {
+        byte[] content = bytes(20_000);
+        Set<Path> same = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            same.add(write("file-" + i, content));
+        }
+        byte[] other = content.clone();
+        other[other.length - 5000] ^= 1;
+        write("other", other);
+        assertEquals(List.of(same), run(HashAlgorithm.XXHASH_64, 2));
+    }
+
+    @Test
+    public void weakCollisionIsNotDuplicate() throws IOException, RecursiveWalkException {
+        HashFunction function = HashAlgorithm.FNV1_32.create();
+        Map<ByteBuffer, byte[]> seen = new HashMap<>();
+        byte[] left;
+        byte[] right;
+        while (true) {
+            byte[] prefix = bytes(8);
+            function.update(prefix, 0, prefix.length);
+            byte[] previous = seen.putIfAbsent(ByteBuffer.wrap(function.digest()), prefix);
+            if (previous != null && !Arrays.equals(previous, prefix)) {
+                left = previous;
+                right = prefix;
+                break;
+            }
+        }
+
+        byte[] suffix = bytes(20_000);
+        Set<Path> files = new HashSet<>();
+        for (byte[] prefix : List.of(left, right)) {
+            byte[] content = Arrays.copyOf(prefix, prefix.length + suffix.length);
+            System.arraycopy(suffix, 0, content, prefix.length, suffix.length);
+            files.add(write("file-" + files.size(), content));
+        }
+        assertEquals(List.of(), run(HashAlgorithm.FNV1_32, 0));
+
+        files.add(write("copy", Files.readAllBytes(files.iterator().next())));
+        assertEquals(1, run(HashAlgorithm.FNV1_32, 2).size());
+    }
+}
@@ -0,0 +1,85 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HashFunctionTest {
+    private static final String SPAM = "Nobody inspects the spammish repetition";
+
+    /**
+     * Reference digests of {@code "", "a", "abc", SPAM} and {@link #ramp()}, in {@link HashAlgorithm#format} form.
+     */
+    private static final Map<HashAlgorithm, String[]> VECTORS = Map.of(
+            HashAlgorithm.FNV1_32, new String[]{"-2128831035", "84696446", "1134309195", "368699119", "1100717687"},
+            HashAlgorithm.FNV1A_64, new String[]{"cbf29ce484222325", "af63dc4c8601ec8c", "e71fa2190541574b",
+                    "0637a291fd6c205b", "588fd2c6689fe323"},
+            HashAlgorithm.XXHASH_64, new String[]{"ef46db3751d8e999", "d24ec4f1a98c6e5b", "44bc2cf5ad770999",
+                    "fbcea83c8a378bf1", "d45352830e83df92"},
+            HashAlgorithm.SHA_256, new String[]{
+                    "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                    "ca978112ca1bbdcafac231b39a23dc4da786eff8147c4e72b9807785afee48bb",
+                    "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                    "031edd7d41651593c5fe5c006fa5752b37fddff7bc4e843aa6af0c950f4b9406",
+                    "9820fb56061d1595e390950bef6886c9c142dfb76c6b5edcd0f5a4fd15403146"});
+
+    /**
+     * Bytes {@code 0..255} four times and then {@code "tail"}, so XXH64 goes through stripes, words and single bytes.
+     */
+    private static byte[] ramp() {
+        byte[] bytes = new byte[1028];
+        for (int i = 0; i < 1024; i++) {
+            bytes[i] = (byte) i;
+        }
+        System.arraycopy("tail".getBytes(StandardCharsets.US_ASCII), 0, bytes, 1024, 4);
+        return bytes;
+    }
+
+    private static byte[][] inputs() {
+        return new byte[][]{new byte[0], "a".getBytes(StandardCharsets.US_ASCII), "abc".getBytes(StandardCharsets.US_ASCII),
+                SPAM.getBytes(StandardCharsets.US_ASCII), ramp()};
+    }
+
+    @Test
+    public void matchesReferenceVectors() {
+        byte[][] inputs = inputs();
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            HashFunction function = algorithm.create();
+            for (int i = 0; i < inputs.length; i++) {
+                function.update(inputs[i], 0, inputs[i].length);
+                byte[] digest = function.digest();
+                assertEquals(algorithm + " of input " + i, algorithm.length(), digest.length);
+                assertEquals(algorithm + " of input " + i, VECTORS.get(algorithm)[i], algorithm.format(digest));
+            }
+        }
+    }
+
+    @Test
+    public void splitUpdatesMatchWholeUpdate() {
+        byte[] ramp = ramp();
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            for (int step : new int[]{1, 3, 7, 31, 32, 33, 100}) {
+                HashFunction function = algorithm.create();
+                for (int offset = 0; offset < ramp.length; offset += step) {
+                    function.update(ramp, offset, Math.min(step, ramp.length - offset));
+                }
+                assertEquals(algorithm + " in steps of " + step, VECTORS.get(algorithm)[4], algorithm.format(function.digest()));
+            }
+        }
+    }
+
+    @Test
+    public void forNameAcceptsAnyCase() {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertEquals(algorithm, HashAlgorithm.forName(algorithm.getName().toUpperCase()));
+        }
+        try {
+            HashAlgorithm.forName("md5");
+            fail("Unknown algorithm accepted");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HashIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path index;
+    private Path file;
+    private BasicFileAttributes attrs;
+
+    @Before
+    public void setUp() throws IOException {
+        index = folder.getRoot().toPath().resolve("index");
+        file = folder.newFile("file").toPath();
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+        attrs = Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    private static byte[] hash(HashAlgorithm algorithm, int seed) {
+        byte[] hash = new byte[algorithm.length()];
+        Arrays.fill(hash, (byte) seed);
+        return hash;
+    }
+
+    private Path path(int i) {
+        return file.resolveSibling("file-" + i);
+    }
+
+    private void store(HashAlgorithm algorithm, int count) throws IOException {
+        try (HashIndex hashes = HashIndex.open(index, algorithm)) {
+            for (int i = 0; i < count; i++) {
+                hashes.store(path(i), attrs, hash(algorithm, i));
+            }
+        }
+    }
+
+    private void assertStored(HashAlgorithm algorithm, int from, int to) throws IOException {
+        try (HashIndex hashes = HashIndex.open(index, algorithm)) {
+            for (int i = from; i < to; i++) {
+                assertArrayEquals("record " + i, hash(algorithm, i), hashes.lookup(path(i), attrs));
+            }
+        }
+    }
+
+    private void assertMissing(HashAlgorithm algorithm, int i) throws IOException {
+        try (HashIndex hashes = HashIndex.open(index, algorithm)) {
+            assertNull("record " + i, hashes.lookup(path(i), attrs));
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        store(HashAlgorithm.SHA_256, 10);
+        assertStored(HashAlgorithm.SHA_256, 0, 10);
+        assertMissing(HashAlgorithm.SHA_256, 10);
+    }
+
+    @Test
+    public void changedFileMisses() throws IOException {
+        store(HashAlgorithm.FNV1_32, 1);
+        Files.write(file, "longer content".getBytes(StandardCharsets.UTF_8));
+        BasicFileAttributes changed = Files.readAttributes(file, BasicFileAttributes.class);
+        try (HashIndex hashes = HashIndex.open(index, HashAlgorithm.FNV1_32)) {
+            assertNull(hashes.lookup(path(0), changed));
+        }
+    }
+
+    @Test
+    public void tornTailIsDropped() throws IOException {
+        store(HashAlgorithm.FNV1_32, 3);
+        truncate(Files.size(index) - 3);
+        assertStored(HashAlgorithm.FNV1_32, 0, 2);
+        assertMissing(HashAlgorithm.FNV1_32, 2);
+
+        try (HashIndex hashes = HashIndex.open(index, HashAlgorithm.FNV1_32)) {
+            hashes.store(path(2), attrs, hash(HashAlgorithm.FNV1_32, 2));
+        }
+        assertStored(HashAlgorithm.FNV1_32, 0, 3);
+    }
+
+    @Test
+    public void corruptRecordEndsLog() throws IOException {
+        store(HashAlgorithm.FNV1_32, 3);
+        byte[] bytes = Files.readAllBytes(index);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(index, bytes);
+        try (HashIndex hashes = HashIndex.open(index, HashAlgorithm.FNV1_32)) {
+            assertArrayEquals(hash(HashAlgorithm.FNV1_32, 0), hashes.lookup(path(0), attrs));
+            assertNull(hashes.lookup(path(2), attrs));
+        }
+    }
+
+    @Test
+    public void headerOnlyIsEmpty() throws IOException {
+        store(HashAlgorithm.FNV1_32, 1);
+        truncate(8);
+        assertMissing(HashAlgorithm.FNV1_32, 0);
+    }
+
+    @Test
+    public void foreignFileIsRefused() throws IOException {
+        byte[] foreign = "not an index at all".getBytes(StandardCharsets.UTF_8);
+        Files.write(index, foreign);
+        try {
+            HashIndex.open(index, HashAlgorithm.FNV1_32).close();
+            fail("Foreign file accepted");
+        } catch (IOException e) {
+            assertArrayEquals(foreign, Files.readAllBytes(index));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shortForeignFileIsRefused() throws IOException {
+        Files.write(index, new byte[]{1, 2, 3});
+        HashIndex.open(index, HashAlgorithm.FNV1_32).close();
+    }
+
+    @Test
+    public void otherAlgorithmsAreKept() throws IOException {
+        store(HashAlgorithm.SHA_256, 5);
+        store(HashAlgorithm.XXHASH_64, 3);
+        assertStored(HashAlgorithm.SHA_256, 0, 5);
+        assertStored(HashAlgorithm.XXHASH_64, 0, 3);
+        assertMissing(HashAlgorithm.XXHASH_64, 4);
+    }
+
+    @Test
+    public void partialRunKeepsOtherRecords() throws IOException {
+        store(HashAlgorithm.FNV1_32, 5000);
+        assertStored(HashAlgorithm.FNV1_32, 0, 1);
+        assertStored(HashAlgorithm.FNV1_32, 0, 5000);
+    }
+
+    @Test
+    public void compactionDropsSupersededAndVanished() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(Files.write(folder.getRoot().toPath().resolve("real-" + i), new byte[i]));
+        }
+        try (HashIndex hashes = HashIndex.open(index, HashAlgorithm.FNV1_32)) {
+            for (int round = 0; round < 60; round++) {
+                for (Path real : files) {
+                    BasicFileAttributes realAttrs = Files.readAttributes(real, BasicFileAttributes.class);
+                    hashes.store(real, realAttrs, hash(HashAlgorithm.FNV1_32, round));
+                }
+            }
+            for (int i = 0; i < 10; i++) {
+                hashes.store(path(i), attrs, hash(HashAlgorithm.FNV1_32, i));
+            }
+        }
+        assertTrue(Files.size(index) < 40 * (20 + 10) * 4);
+        try (HashIndex hashes = HashIndex.open(index, HashAlgorithm.FNV1_32)) {
+            for (Path real : files) {
+                assertArrayEquals(hash(HashAlgorithm.FNV1_32, 59),
+                        hashes.lookup(real, Files.readAttributes(real, BasicFileAttributes.class)));
+            }
+        }
+        assertMissing(HashAlgorithm.FNV1_32, 0);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HashingEngineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(1);
+
+    private byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] digest(HashAlgorithm algorithm, byte[] bytes, int from, int to) {
+        HashFunction function = algorithm.create();
+        function.update(bytes, from, to - from);
+        return function.digest();
+    }
+
+    private byte[] hash(HashingEngine engine, byte[] content, int ends) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content);
+        try (FileChannel channel = FileChannel.open(file)) {
+            return ends == 0 ? engine.hash(channel) : engine.hashEnds(channel, ends);
+        }
+    }
+
+    @Test
+    public void bufferUpdateMatchesArrayUpdate() {
+        byte[] bytes = bytes(10_000);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            for (boolean direct : new boolean[]{false, true}) {
+                ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+                buffer.put(bytes).flip();
+                HashFunction function = algorithm.create();
+                for (int position = 0; position < bytes.length; ) {
+                    int limit = Math.min(bytes.length, position + random.nextInt(100));
+                    function.update(buffer.limit(limit).position(position));
+                    assertEquals(limit, buffer.position());
+                    position = limit;
+                }
+                assertArrayEquals(algorithm + (direct ? " direct" : " heap"), digest(algorithm, bytes, 0, bytes.length), function.digest());
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileMatchesBufferedFile() throws IOException {
+        byte[] content = bytes((1 << 24) + 1234);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            HashingEngine engine = new HashingEngine(algorithm);
+            assertArrayEquals(algorithm.toString(), digest(algorithm, content, 0, content.length), hash(engine, content, 0));
+            byte[] small = Arrays.copyOf(content, 100_001);
+            assertArrayEquals(algorithm.toString(), digest(algorithm, small, 0, small.length), hash(engine, small, 0));
+        }
+    }
+
+    @Test
+    public void endsLongerThanBufferAreHashedWhole() throws IOException {
+        byte[] content = bytes(300_000);
+        int ends = 100_000;
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            byte[] joined = new byte[2 * ends];
+            System.arraycopy(content, 0, joined, 0, ends);
+            System.arraycopy(content, content.length - ends, joined, ends, ends);
+            assertArrayEquals(algorithm.toString(), digest(algorithm, joined, 0, joined.length), hash(new HashingEngine(algorithm), content, ends));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ManifestTest {
+    private static final HashAlgorithm ALGORITHM = HashAlgorithm.XXHASH_64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path manifest;
+
+    @Before
+    public void setUp() {
+        manifest = folder.getRoot().toPath().resolve("manifest");
+    }
+
+    private static List<WalkEntry> entries(int count) {
+        List<WalkEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String path = "root/dir-" + i / 50 + "/файл-" + i + (i % 7 == 0 ? "-😀" : "");
+            entries.add(new WalkEntry(path, HashAlgorithm.toBytes(31L * i), i, 1000L * i));
+        }
+        return entries;
+    }
+
+    private void write(List<WalkEntry> entries) throws IOException {
+        try (ManifestWriter writer = new ManifestWriter(manifest, ALGORITHM)) {
+            for (WalkEntry entry : entries) {
+                writer.write(entry);
+            }
+        }
+    }
+
+    private static void assertEntry(WalkEntry expected, ManifestReader.Entry actual) {
+        assertEquals(expected.path(), actual.getPath());
+        assertArrayEquals(expected.digest(), actual.getHash());
+        assertEquals(expected.size(), actual.getSize());
+        assertEquals(expected.modified(), actual.getModified());
+    }
+
+    private void assertRefused() {
+        try {
+            ManifestReader.open(manifest).close();
+            fail("Corrupted manifest accepted");
+        } catch (IOException expected) {
+            // refused
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<WalkEntry> entries = entries(3 * ManifestWriter.BLOCK_ENTRIES + 5);
+        write(entries);
+        try (ManifestReader reader = ManifestReader.open(manifest)) {
+            assertEquals(entries.size(), reader.size());
+            assertEquals(ALGORITHM, reader.algorithm());
+            int i = 0;
+            for (ManifestReader.Entry entry : reader) {
+                assertEntry(entries.get(i++), entry);
+            }
+            assertEquals(entries.size(), i);
+        }
+    }
+
+    @Test
+    public void emptyRoundTrip() throws IOException {
+        write(List.of());
+        try (ManifestReader reader = ManifestReader.open(manifest)) {
+            assertEquals(0, reader.size());
+            assertFalse(reader.iterator().hasNext());
+            assertFalse(reader.cursor().next());
+        }
+    }
+
+    @Test
+    public void cursorSeeks() throws IOException {
+        List<WalkEntry> entries = entries(2 * ManifestWriter.BLOCK_ENTRIES + 1);
+        write(entries);
+        try (ManifestReader reader = ManifestReader.open(manifest)) {
+            for (int start : new int[]{0, 1, ManifestWriter.BLOCK_ENTRIES - 1, ManifestWriter.BLOCK_ENTRIES, entries.size() - 1}) {
+                ManifestReader.Cursor cursor = reader.cursor(start);
+                assertTrue(cursor.next());
+                WalkEntry expected = entries.get(start);
+                assertEquals(start, cursor.index());
+                assertEquals(expected.path(), cursor.path());
+                assertEquals(ByteBuffer.wrap(expected.digest()), cursor.hash());
+                assertEquals(expected.size(), cursor.size());
+            }
+            assertFalse(reader.cursor(entries.size()).next());
+        }
+    }
+
+    @Test
+    public void truncatedIsRefused() throws IOException {
+        write(entries(300));
+        byte[] bytes = Files.readAllBytes(manifest);
+        Files.write(manifest, Arrays.copyOf(bytes, bytes.length - 5));
+        assertRefused();
+    }
+
+    @Test
+    public void shortFileIsRefused() throws IOException {
+        Files.write(manifest, new byte[10]);
+        assertRefused();
+    }
+
+    @Test
+    public void corruptHeaderIsRefused() throws IOException {
+        write(entries(10));
+        byte[] bytes = Files.readAllBytes(manifest);
+        bytes[5] ^= 1;
+        Files.write(manifest, bytes);
+        assertRefused();
+    }
+
+    @Test
+    public void corruptEntryFailsRead() throws IOException {
+        write(entries(10));
+        byte[] bytes = Files.readAllBytes(manifest);
+        bytes[13 + ALGORITHM.getName().length()] = 5;
+        Files.write(manifest, bytes);
+        try (ManifestReader reader = ManifestReader.open(manifest)) {
+            reader.cursor().next();
+            fail("Corrupted entry read");
+        } catch (IOException expected) {
+            // refused
+        }
+    }
+
+    @Test
+    public void corruptIndexOffsetIsRefused() throws IOException {
+        write(entries(10));
+        byte[] bytes = Files.readAllBytes(manifest);
+        ByteBuffer.wrap(bytes).putLong(bytes.length - ManifestWriter.FOOTER_SIZE + 8, bytes.length);
+        Files.write(manifest, bytes);
+        assertRefused();
+    }
+}
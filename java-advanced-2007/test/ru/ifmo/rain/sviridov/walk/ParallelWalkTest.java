@@ -0,0 +1,132 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelWalkTest {
+    private static final HashAlgorithm ALGORITHM = HashAlgorithm.XXHASH_64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> roots = new ArrayList<>();
+
+    /**
+     * Output keeping entries in memory, failing on the entries whose path contains {@code failOn}.
+     */
+    private static class ListOutput implements WalkOutput {
+        private final List<String> lines = new ArrayList<>();
+        private final String failOn;
+
+        ListOutput(String failOn) {
+            this.failOn = failOn;
+        }
+
+        @Override
+        public void write(WalkEntry entry) throws IOException {
+            if (failOn != null && entry.path().contains(failOn)) {
+                throw new IOException("No space left");
+            }
+            lines.add(ALGORITHM.format(entry.digest()) + " " + entry.path());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(7);
+        Path base = folder.getRoot().toPath();
+        for (int root = 0; root < 6; root++) {
+            for (int file = 0; file < 10 * root; file++) {
+                Path path = base.resolve("root-" + root).resolve("dir-" + file % 3).resolve("file-" + file);
+                Files.createDirectories(path.getParent());
+                byte[] bytes = new byte[random.nextInt(5000)];
+                random.nextBytes(bytes);
+                Files.write(path, bytes);
+            }
+            roots.add(base.resolve("root-" + root).toString());
+            if (root == 2) {
+                roots.add(base.resolve("missing").toString());
+            }
+        }
+        roots.add(base.resolve("root-4").toString());
+    }
+
+    private String input() {
+        return String.join("\n", roots) + "\n";
+    }
+
+    private List<String> sequential() {
+        ListOutput output = new ListOutput(null);
+        HashingEngine engine = new HashingEngine(ALGORITHM);
+        RecursiveWalkTree tree = new RecursiveWalkTree(output, engine, null, new WalkStatistics(engine));
+        for (String root : roots) {
+            try {
+                Files.walkFileTree(Paths.get(root), tree);
+            } catch (InvalidPathException | IOException e) {
+                output.lines.add(ALGORITHM.format(ALGORITHM.zero()) + " " + root);
+            }
+        }
+        return output.lines;
+    }
+
+    private ListOutput parallel(int threads, String failOn, WalkStatistics statistics, HashingEngine engine) throws RecursiveWalkException {
+        ListOutput output = new ListOutput(failOn);
+        RecursiveWalkTree tree = new RecursiveWalkTree(output, engine, null, statistics);
+        new ParallelWalk(tree, statistics, threads).run(new BufferedReader(new StringReader(input())), output);
+        return output;
+    }
+
+    @Test
+    public void keepsSequentialOrder() throws RecursiveWalkException {
+        List<String> expected = sequential();
+        assertEquals(10 * 15 + 40 + 2, expected.size());
+        for (int threads : new int[]{1, 2, 5}) {
+            HashingEngine engine = new HashingEngine(ALGORITHM);
+            assertEquals(expected, parallel(threads, null, new WalkStatistics(engine), engine).lines);
+        }
+    }
+
+    @Test
+    public void outputErrorEndsOnlyItsRoot() throws RecursiveWalkException {
+        HashingEngine engine = new HashingEngine(ALGORITHM);
+        WalkStatistics statistics = new WalkStatistics(engine);
+        String separator = folder.getRoot().toPath().getFileSystem().getSeparator();
+        String failOn = "root-3" + separator + "dir-1";
+        List<String> lines = parallel(3, failOn, statistics, engine).lines;
+
+        List<String> expected = new ArrayList<>();
+        boolean failed = false;
+        for (String line : sequential()) {
+            failed |= line.contains(failOn);
+            if (!failed || !line.contains("root-3" + separator)) {
+                expected.add(line);
+            }
+        }
+        assertTrue(failed);
+        assertEquals(expected, lines);
+        assertEquals(1, statistics.getErrorsByKind().get("OUTPUT").longValue());
+    }
+}
@@ -0,0 +1,107 @@
+package ru.ifmo.rain.sviridov.walk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WatchWalkTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+    private Path output;
+    private Thread watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("root").toPath();
+        output = folder.getRoot().toPath().resolve("output");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher.join(10_000);
+            assertFalse(watcher.isAlive());
+        }
+    }
+
+    private void start(boolean manifest) {
+        HashingEngine engine = new HashingEngine(HashAlgorithm.XXHASH_64);
+        WatchWalk watchWalk = new WatchWalk(engine, null, new WalkStatistics(engine), output, manifest);
+        watcher = new Thread(() -> {
+            try {
+                watchWalk.run(new BufferedReader(new StringReader(root + "\n")));
+            } catch (RecursiveWalkException e) {
+                throw new AssertionError(e);
+            }
+        });
+        watcher.start();
+    }
+
+    private void awaitOutput() throws InterruptedException {
+        for (int i = 0; i < 500 && !Files.exists(output); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.exists(output));
+    }
+
+    private List<String> manifestPaths() throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (ManifestReader reader = ManifestReader.open(output)) {
+            for (ManifestReader.Entry entry : reader) {
+                paths.add(entry.getPath());
+            }
+        }
+        return paths;
+    }
+
+    @Test
+    public void busyFileDoesNotStallUpdates() throws IOException, InterruptedException {
+        Files.write(root.resolve("old"), new byte[]{1});
+        start(false);
+        awaitOutput();
+        Thread.sleep(200);
+
+        Path busy = root.resolve("busy");
+        long end = System.nanoTime() + 3_000_000_000L;
+        boolean seen = false;
+        for (int i = 0; System.nanoTime() < end; i++) {
+            Files.write(busy, new byte[]{(byte) i}, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            seen |= new String(Files.readAllBytes(output), StandardCharsets.UTF_8).contains(busy.toString());
+            Thread.sleep(50);
+        }
+        assertTrue("No update while the file kept changing", seen);
+    }
+
+    @Test
+    public void interruptionWritesPendingManifest() throws IOException, InterruptedException {
+        Files.write(root.resolve("old"), new byte[]{1});
+        start(true);
+        awaitOutput();
+        assertEquals(List.of(root.resolve("old").toString()), manifestPaths());
+
+        Files.write(root.resolve("new"), new byte[]{2});
+        Thread.sleep(700);
+        watcher.interrupt();
+        watcher.join(10_000);
+        assertFalse(watcher.isAlive());
+        watcher = null;
+        assertEquals(List.of(root.resolve("new").toString(), root.resolve("old").toString()), manifestPaths());
+    }
+}